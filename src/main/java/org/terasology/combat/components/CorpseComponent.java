@@ -0,0 +1,28 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.components;
+
+import org.terasology.entitySystem.Component;
+
+/**
+ * Marks a corpse of the CorpseManager. The manager keeps the age of a corpse in memory and stores it here when the
+ * corpse is unloaded, a corpse that is loaded again is adopted by the manager with its remaining lifespan.
+ * A frozen corpse has no rigid body, it gets a rigid body of the dead body prefab when it is woken after a reload.
+ */
+public final class CorpseComponent implements Component {
+    public float age;
+    public boolean frozen;
+}
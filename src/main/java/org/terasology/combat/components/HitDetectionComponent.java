@@ -21,7 +21,10 @@ import org.terasology.entitySystem.Component;
 public final class HitDetectionComponent implements Component {
     public HitDetection trigger = HitDetection.ONCE;
     public boolean hitBlocks = false;
-//    public float detectionPeriod = 0.0f;
-//    public float timeSinceLastHit = 0;
-//    public float timeBetweenHits = 0;
+    //seconds between two hits (PERIODIC, PERIODIC_PER_ENTITY, ON_PERIOD) or the contact time needed for a hit (TIMED_COLLSION_PER_ENTITY)
+    public float detectionPeriod = 1.0f;
+    //seconds without a collision after that a contact ends (ON_CONTACT, TIMED_COLLSION_PER_ENTITY)
+    public float contactTimeout = 0.25f;
+    //minimum speed of the entity for WHILE_MOVING
+    public float minSpeed = 0.5f;
 }
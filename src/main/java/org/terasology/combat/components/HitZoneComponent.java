@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.components;
+
+import com.google.common.collect.Lists;
+import org.terasology.entitySystem.Component;
+
+import javax.vecmath.Vector3f;
+import java.util.List;
+
+/**
+ * Hit zones (head, legs, arms...) of a creature as boxes in the local space of the creature.
+ * The zone i is the box from min[i] to max[i] with the name names[i] and the damage multiplier multipliers[i].
+ * If zones overlap the zone listed first wins, hits outside of all zones use the multiplier 1.
+ * The zones are compiled once per prefab into a grid with resolution cells per axis.
+ */
+public final class HitZoneComponent implements Component {
+    public List<String> names = Lists.newArrayList();
+    public List<Vector3f> min = Lists.newArrayList();
+    public List<Vector3f> max = Lists.newArrayList();
+    public List<Float> multipliers = Lists.newArrayList();
+    public int resolution = 8;
+}
@@ -33,5 +33,7 @@ public final class ProjectileComponent implements Component {
     public boolean piercing = false;
     public boolean reflect = false;
     public boolean velocityBasedRotation = true;
+    //false if every hit has to be applied as separate damage instead of being summed up per target and tick
+    public boolean aggregateDamage = true;
 
 }
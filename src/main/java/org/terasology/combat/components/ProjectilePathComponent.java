@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.components;
+
+import com.google.common.collect.Lists;
+import org.terasology.combat.systems.ProjectilePath;
+import org.terasology.entitySystem.Component;
+
+import javax.vecmath.Vector3f;
+import java.util.List;
+
+/**
+ * Flight path of a projectile. The points are defined relative to the launch position and rotation
+ * of the projectile (z is the launch direction, y is up). After the end of the path the projectile
+ * continues with its velocity at the end of the path.
+ */
+public final class ProjectilePathComponent implements Component {
+    public ProjectilePath type = ProjectilePath.LINEAR;
+    public List<Vector3f> points = Lists.newArrayList();
+    public float speed = 20;
+}
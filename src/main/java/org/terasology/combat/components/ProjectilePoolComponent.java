@@ -0,0 +1,26 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.components;
+
+import org.terasology.entitySystem.Component;
+
+/**
+ * Opt-in pooling of a launched projectile prefab. The LaunchEntityAction creates size dormant projectiles on the
+ * first launch of the prefab and reuses them, an expired projectile goes back to the pool instead of being destroyed.
+ */
+public final class ProjectilePoolComponent implements Component {
+    public int size = 16;
+}
@@ -20,17 +20,48 @@ import org.terasology.entitySystem.event.Event;
 
 import javax.vecmath.Vector3f;
 
+/**
+ * Sent to the instigator of a hit. HitEvents are pooled and reused after they have been sent (see HitEventPool),
+ * the event owns its vectors and copies the values it is set to. Listeners must not modify the vectors and must
+ * not keep a reference to the event or its vectors, a listener that needs the hit later has to keep a copy().
+ */
 public class HitEvent implements Event {
-    private EntityRef instigator;
-    private EntityRef other;
-    private Vector3f hitPosition;
-    private Vector3f hitNormal;
+    private EntityRef instigator = EntityRef.NULL;
+    private EntityRef other = EntityRef.NULL;
+    private final Vector3f hitPosition = new Vector3f();
+    private final Vector3f hitNormal = new Vector3f();
+
+    public HitEvent() {
+    }
 
     public HitEvent(EntityRef instigator, EntityRef other, Vector3f drive, Vector3f hitNormal) {
+        set(instigator, other, drive, hitNormal);
+    }
+
+    /**
+     * Sets the hit, the vectors are copied
+     */
+    public HitEvent set(EntityRef instigator, EntityRef other, Vector3f hitPosition, Vector3f hitNormal) {
         this.instigator = instigator;
         this.other = other;
-        this.hitPosition = drive;
-        this.hitNormal = hitNormal;
+        this.hitPosition.set(hitPosition);
+        this.hitNormal.set(hitNormal);
+        return this;
+    }
+
+    /**
+     * @return a new event with the values of this event that can be kept after the event has been handled
+     */
+    public HitEvent copy() {
+        return new HitEvent(instigator, other, hitPosition, hitNormal);
+    }
+
+    /**
+     * Drops the references to the entities, called when the event is returned to its pool
+     */
+    public void reset() {
+        instigator = EntityRef.NULL;
+        other = EntityRef.NULL;
     }
 
     public EntityRef getInstigator() {
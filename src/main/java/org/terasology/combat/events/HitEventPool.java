@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.events;
+
+import org.terasology.entitySystem.entity.EntityRef;
+
+import javax.vecmath.Vector3f;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of HitEvents. An event is obtained, sent and released right after the send returned, events are only
+ * created if events are sent while handling another event (or the pool is empty).
+ */
+public class HitEventPool {
+
+    private final Deque<HitEvent> free;
+    private int created;
+
+    public HitEventPool(int capacity) {
+        free = new ArrayDeque<HitEvent>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            free.push(new HitEvent());
+        }
+        created = capacity;
+    }
+
+    public HitEvent obtain(EntityRef instigator, EntityRef other, Vector3f hitPosition, Vector3f hitNormal) {
+        HitEvent event = free.poll();
+        if (event == null) {
+            event = new HitEvent();
+            created++;
+        }
+        return event.set(instigator, other, hitPosition, hitNormal);
+    }
+
+    public void release(HitEvent event) {
+        event.reset();
+        free.push(event);
+    }
+
+    /**
+     * @return the number of events the pool created, stays constant on the steady state path
+     */
+    public int getCreated() {
+        return created;
+    }
+}
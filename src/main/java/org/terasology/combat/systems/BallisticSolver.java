@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Calculates the launch velocity that hits a target with a projectile of a given speed that is effected by gravity.
+ * For every reachable target there are two solutions, the low arc and the high arc.
+ * The angle is solved analytically: tan(angle) = (v^2 +- sqrt(v^4 - g(g x^2 + 2 y v^2))) / (g x)
+ * with x the horizontal and y the vertical distance to the target.
+ * The solver doesn't allocate, the batch methods read and write packed xyz arrays.
+ */
+public class BallisticSolver {
+
+    private static final double EPSILON = 1.0e-6;
+
+    private final double gravity;
+
+    public BallisticSolver() {
+        this(ProjectileSystem.GRAVITY);
+    }
+
+    public BallisticSolver(float gravity) {
+        this.gravity = gravity;
+    }
+
+    /**
+     * Fast check if the target can be reached at the given speed, without calculating the trajectory.
+     * Targets can't be reached with a speed that isn't positive.
+     */
+    public boolean canReach(float dx, float dy, float dz, float speed) {
+        return speed > 0 && discriminant((double) dx * dx + (double) dz * dz, dy, (double) speed * speed) >= 0;
+    }
+
+    public boolean canReach(Vector3f origin, Vector3f target, float speed) {
+        return canReach(target.x - origin.x, target.y - origin.y, target.z - origin.z, speed);
+    }
+
+    /**
+     * @param outVelocity is set to the launch velocity or to zero if the target can't be reached
+     * @return true if the target can be reached at the given speed
+     */
+    public boolean solve(Vector3f origin, Vector3f target, float speed, boolean highArc, Vector3f outVelocity) {
+        double dx = target.x - origin.x;
+        double dy = target.y - origin.y;
+        double dz = target.z - origin.z;
+        double x = Math.sqrt(dx * dx + dz * dz);
+        double tan = tan(x, dy, speed, highArc);
+        if (Double.isNaN(tan)) {
+            outVelocity.set(0, 0, 0);
+            return false;
+        }
+        if (x < EPSILON) {//straight up or down
+            outVelocity.set(0, dy >= 0 ? speed : -speed, 0);
+            return true;
+        }
+        double cos = 1 / Math.sqrt(1 + tan * tan);
+        double horizontal = speed * cos / x;
+        outVelocity.set((float) (dx * horizontal), (float) (tan * cos * speed), (float) (dz * horizontal));
+        return true;
+    }
+
+    /**
+     * Solves count requests at once. origins, targets and outVelocities are packed as x,y,z triples.
+     *
+     * @param reachable is set for every request, may be null
+     * @return the number of reachable targets
+     */
+    public int solve(float[] origins, float[] targets, float[] speeds, int count, boolean highArc,
+                     float[] outVelocities, boolean[] reachable) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            int index = i * 3;
+            double dx = targets[index] - origins[index];
+            double dy = targets[index + 1] - origins[index + 1];
+            double dz = targets[index + 2] - origins[index + 2];
+            double speed = speeds[i];
+            double x = Math.sqrt(dx * dx + dz * dz);
+            double tan = tan(x, dy, speed, highArc);
+            boolean canHit = !Double.isNaN(tan);
+            if (!canHit) {
+                outVelocities[index] = 0;
+                outVelocities[index + 1] = 0;
+                outVelocities[index + 2] = 0;
+            } else if (x < EPSILON) {
+                outVelocities[index] = 0;
+                outVelocities[index + 1] = (float) (dy >= 0 ? speed : -speed);
+                outVelocities[index + 2] = 0;
+            } else {
+                double cos = 1 / Math.sqrt(1 + tan * tan);
+                double horizontal = speed * cos / x;
+                outVelocities[index] = (float) (dx * horizontal);
+                outVelocities[index + 1] = (float) (tan * cos * speed);
+                outVelocities[index + 2] = (float) (dz * horizontal);
+            }
+            if (reachable != null) {
+                reachable[i] = canHit;
+            }
+            if (canHit) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks count requests at once, see canReach.
+     *
+     * @return the number of reachable targets
+     */
+    public int canReach(float[] origins, float[] targets, float[] speeds, int count, boolean[] reachable) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            int index = i * 3;
+            boolean canHit = canReach(targets[index] - origins[index], targets[index + 1] - origins[index + 1],
+                    targets[index + 2] - origins[index + 2], speeds[i]);
+            reachable[i] = canHit;
+            if (canHit) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    public float getGravity() {
+        return (float) gravity;
+    }
+
+    /**
+     * @return v^4 - g(g x^2 + 2 y v^2), negative if the target is out of reach
+     */
+    private double discriminant(double x2, double dy, double v2) {
+        return v2 * v2 - gravity * (gravity * x2 + 2 * dy * v2);
+    }
+
+    /**
+     * @param x the horizontal distance to the target
+     * @return the tangent of the launch angle, NaN if the target can't be reached, infinite if the target is
+     * straight up or down
+     */
+    private double tan(double x, double dy, double speed, boolean highArc) {
+        if (!(speed > 0)) {
+            return Double.NaN;
+        }
+        double v2 = speed * speed;
+        double term = discriminant(x * x, dy, v2);
+        if (term < 0) {
+            return Double.NaN;
+        }
+        if (x < EPSILON) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double root = Math.sqrt(term);
+        return (highArc ? v2 + root : v2 - root) / (gravity * x);
+    }
+}
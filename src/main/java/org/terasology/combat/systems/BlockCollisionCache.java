@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.math.Vector3i;
+import org.terasology.world.WorldProvider;
+import org.terasology.world.block.Block;
+
+import java.util.Arrays;
+
+/**
+ * Caches the collision properties of the blocks that are hit by projectiles.
+ * The properties of every block type are computed once into a flags table indexed by the block id,
+ * the flags of a block position are cached by the packed position until the block changes.
+ * Positions in chunks that aren't loaded aren't cached, the world provider reports them as air until the chunk
+ * has been loaded.
+ * If the cache exceeds MAX_ENTRIES it is cleared.
+ */
+public class BlockCollisionCache {
+
+    public static final int PENETRABLE = 1;
+    public static final int LIQUID = 1 << 1;
+    private static final int KNOWN = 1 << 2;
+
+    private static final int MAX_ENTRIES = 4096;
+    private static final int MISSING = -1;
+
+    private final WorldProvider worldProvider;
+    private final LongIntHashMap positions = new LongIntHashMap(MAX_ENTRIES);
+    private int[] typeFlags = new int[256];
+
+    public BlockCollisionCache(WorldProvider worldProvider) {
+        this.worldProvider = worldProvider;
+    }
+
+    /**
+     * Packs a block position into a long, 21 bits per axis.
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+
+    public int getFlags(Vector3i position) {
+        long key = pack(position.x, position.y, position.z);
+        int flags = positions.get(key, MISSING);
+        if (flags == MISSING) {
+            flags = getTypeFlags(worldProvider.getBlock(position));
+            if (worldProvider.isBlockRelevant(position)) {
+                if (positions.size() >= MAX_ENTRIES) {
+                    positions.clear();
+                }
+                positions.put(key, flags, MISSING);
+            }
+        }
+        return flags;
+    }
+
+    public boolean isPenetrable(Vector3i position) {
+        return (getFlags(position) & PENETRABLE) != 0;
+    }
+
+    public boolean isLiquid(Vector3i position) {
+        return (getFlags(position) & LIQUID) != 0;
+    }
+
+    /**
+     * Has to be called if the block at the position changed
+     */
+    public void invalidate(Vector3i position) {
+        positions.remove(pack(position.x, position.y, position.z), MISSING);
+    }
+
+    public void clear() {
+        positions.clear();
+        Arrays.fill(typeFlags, 0);
+    }
+
+    private int getTypeFlags(Block block) {
+        if (block == null) {
+            return KNOWN;
+        }
+        int id = block.getId() & 0xFFFF;
+        if (id >= typeFlags.length) {
+            typeFlags = Arrays.copyOf(typeFlags, Math.max(id + 1, typeFlags.length * 2));
+        }
+        int flags = typeFlags[id];
+        if (flags == 0) {
+            flags = KNOWN;
+            flags |= block.isPenetrable() ? PENETRABLE : 0;
+            flags |= block.isLiquid() ? LIQUID : 0;
+            typeFlags[id] = flags;
+        }
+        return flags;
+    }
+}
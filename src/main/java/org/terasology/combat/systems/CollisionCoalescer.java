@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.entitySystem.entity.EntityRef;
+
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+
+/**
+ * Reduces all contacts of an (instigator, other) pair within one tick to one contact.
+ * A pair can collide several times in a tick, e.g. through the trigger of the physics engine and through the
+ * ray trace of the ProjectileSystem. The contact with the hit point nearest to the instigator is kept.
+ * Contacts are stored in flat arrays in the order the pairs have been offered first and cleared after draining.
+ */
+public class CollisionCoalescer {
+
+    private static final int MISSING = -1;
+
+    private EntityRef[] instigators;
+    private EntityRef[] others;
+    private float[] points;
+    private float[] normals;
+    private float[] distances;
+    private final LongIntHashMap indices;
+    private int size;
+
+    public CollisionCoalescer(int capacity) {
+        instigators = new EntityRef[capacity];
+        others = new EntityRef[capacity];
+        points = new float[capacity * 3];
+        normals = new float[capacity * 3];
+        distances = new float[capacity];
+        indices = new LongIntHashMap(capacity);
+    }
+
+    /**
+     * Offers a contact of the pair, it replaces the contact of the pair if it is nearer.
+     *
+     * @param distanceSquared squared distance of the hit point to the instigator
+     * @return true if the pair had no contact in this tick yet
+     */
+    public synchronized boolean offer(EntityRef instigator, EntityRef other, Vector3f hitPoint, Vector3f hitNormal,
+                                      float distanceSquared) {
+        long key = HitRegistry.key(instigator.getId(), other.getId());
+        int index = indices.get(key, MISSING);
+        if (index != MISSING) {
+            if (distanceSquared < distances[index]) {
+                set(index, hitPoint, hitNormal, distanceSquared);
+            }
+            return false;
+        }
+        if (size == instigators.length) {
+            int capacity = size * 2;
+            instigators = Arrays.copyOf(instigators, capacity);
+            others = Arrays.copyOf(others, capacity);
+            points = Arrays.copyOf(points, capacity * 3);
+            normals = Arrays.copyOf(normals, capacity * 3);
+            distances = Arrays.copyOf(distances, capacity);
+        }
+        index = size++;
+        indices.put(key, index, MISSING);
+        instigators[index] = instigator;
+        others[index] = other;
+        set(index, hitPoint, hitNormal, distanceSquared);
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized EntityRef getInstigator(int index) {
+        return instigators[index];
+    }
+
+    public synchronized EntityRef getOther(int index) {
+        return others[index];
+    }
+
+    public synchronized void getHitPoint(int index, Vector3f out) {
+        out.set(points[index * 3], points[index * 3 + 1], points[index * 3 + 2]);
+    }
+
+    public synchronized void getHitNormal(int index, Vector3f out) {
+        out.set(normals[index * 3], normals[index * 3 + 1], normals[index * 3 + 2]);
+    }
+
+    /**
+     * Removes all contacts of the tick
+     */
+    public synchronized void clear() {
+        Arrays.fill(instigators, 0, size, null);
+        Arrays.fill(others, 0, size, null);
+        indices.clear();
+        size = 0;
+    }
+
+    private void set(int index, Vector3f hitPoint, Vector3f hitNormal, float distanceSquared) {
+        points[index * 3] = hitPoint.x;
+        points[index * 3 + 1] = hitPoint.y;
+        points[index * 3 + 2] = hitPoint.z;
+        normals[index * 3] = hitNormal.x;
+        normals[index * 3 + 1] = hitNormal.y;
+        normals[index * 3 + 2] = hitNormal.z;
+        distances[index] = distanceSquared;
+    }
+}
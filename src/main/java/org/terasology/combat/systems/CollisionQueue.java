@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.physics.events.CollideEvent;
+
+import java.util.Arrays;
+
+/**
+ * Reusable queue of the collisions of projectiles that are handled in the next frame.
+ * Only the first collision of every projectile is kept until the queue is drained.
+ * The arrays are pre-sized and only grow if the number of queued collisions exceeds the capacity,
+ * the high water mark shows the largest number of collisions that have been queued at once.
+ */
+public class CollisionQueue {
+
+    private static final int MISSING = -1;
+
+    private EntityRef[] projectiles;
+    private CollideEvent[] events;
+    private final LongIntHashMap indices;
+    private int size;
+    private int highWaterMark;
+
+    public CollisionQueue(int capacity) {
+        projectiles = new EntityRef[capacity];
+        events = new CollideEvent[capacity];
+        indices = new LongIntHashMap(capacity);
+    }
+
+    /**
+     * Queues the collision if there is no collision queued for the projectile yet.
+     *
+     * @return true if the collision has been queued
+     */
+    public synchronized boolean offer(EntityRef projectile, CollideEvent event) {
+        long key = projectile.getId();
+        if (indices.containsKey(key)) {
+            return false;
+        }
+        if (size == projectiles.length) {
+            projectiles = Arrays.copyOf(projectiles, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+        }
+        indices.put(key, size, MISSING);
+        projectiles[size] = projectile;
+        events[size] = event;
+        size++;
+        highWaterMark = Math.max(highWaterMark, size);
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized EntityRef getProjectile(int index) {
+        return projectiles[index];
+    }
+
+    public synchronized CollideEvent getEvent(int index) {
+        return events[index];
+    }
+
+    /**
+     * Removes all queued collisions
+     */
+    public synchronized void clear() {
+        Arrays.fill(projectiles, 0, size, null);
+        Arrays.fill(events, 0, size, null);
+        indices.clear();
+        size = 0;
+    }
+
+    public synchronized int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public synchronized int getCapacity() {
+        return projectiles.length;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.google.common.collect.Maps;
+import org.terasology.combat.components.HitDetectionComponent;
+import org.terasology.combat.components.HitZoneComponent;
+import org.terasology.combat.components.ProjectileComponent;
+import org.terasology.combat.components.ProjectilePathComponent;
+import org.terasology.combat.components.ProjectilePoolComponent;
+import org.terasology.entitySystem.entity.EntityManager;
+import org.terasology.entitySystem.prefab.Prefab;
+import org.terasology.logic.common.lifespan.LifespanComponent;
+import org.terasology.logic.inventory.ItemComponent;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.physics.components.RigidBodyComponent;
+
+import java.util.Map;
+
+/**
+ * Prefabs of the launched projectiles and the corpses, resolved once by their name together with the components
+ * the launch and the death paths read from the prefab. Prefabs that don't exist are cached as well, so a missing
+ * prefab isn't looked up on every shot, they are looked up again after the retry interval.
+ * An archetype is resolved again when its prefab has been disposed or reloaded. A reload replaces the components
+ * of the prefab, so an archetype whose components aren't the components of its prefab anymore is stale. Users that
+ * keep an archetype check isValid() before they use it.
+ */
+public class CombatArchetypeCache {
+
+    private final EntityManager entityManager;
+    private Map<String, Archetype> archetypes = Maps.newHashMap();
+    //time at which a missing prefab is looked up again
+    private Map<String, Long> missing = Maps.newHashMap();
+    //nanoseconds until a missing prefab is looked up again
+    private long missingRetryInterval = 1000000000L;
+
+    public CombatArchetypeCache(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    public EntityManager getEntityManager() {
+        return entityManager;
+    }
+
+    /**
+     * @return the archetype of the prefab or null if the prefab doesn't exist
+     */
+    public Archetype get(String prefabName) {
+        if (prefabName == null) {
+            return null;
+        }
+        Archetype archetype = archetypes.get(prefabName);
+        if (archetype != null && archetype.isValid()) {
+            return archetype;
+        }
+        Long retry = missing.get(prefabName);
+        if (retry != null && System.nanoTime() - retry < 0) {
+            return null;
+        }
+        Prefab prefab = entityManager.getPrefabManager().getPrefab(prefabName);
+        if (archetype != null) {
+            archetype.invalidated = true;
+        }
+        if (prefab == null) {
+            archetypes.remove(prefabName);
+            missing.put(prefabName, System.nanoTime() + missingRetryInterval);
+            return null;
+        }
+        missing.remove(prefabName);
+        archetype = new Archetype(prefab);
+        archetypes.put(prefabName, archetype);
+        return archetype;
+    }
+
+    /**
+     * Sets the time after which a prefab that doesn't exist is looked up again, e.g. a prefab of a module that is
+     * loaded later
+     */
+    public void setMissingRetryInterval(float seconds) {
+        this.missingRetryInterval = (long) (seconds * 1.0e9);
+    }
+
+    public void invalidateAll() {
+        for (Archetype archetype : archetypes.values()) {
+            archetype.invalidated = true;
+        }
+        archetypes.clear();
+        missing.clear();
+    }
+
+    /**
+     * A prefab and the components of the prefab, the components are shared and must not be changed
+     */
+    public static final class Archetype {
+        final Prefab prefab;
+        final ItemComponent item;
+        final LocationComponent location;
+        final RigidBodyComponent rigidBody;
+        final ProjectileComponent projectile;
+        final HitDetectionComponent hitDetection;
+        final LifespanComponent lifespan;
+        final ProjectilePoolComponent pool;
+        final HitZoneComponent hitZones;
+        final ProjectilePathComponent path;
+        boolean invalidated;
+        //compiled on the first hit, null if the prefab defines no valid zone
+        private HitZoneTable hitZoneTable;
+        private boolean hitZonesCompiled;
+        //sampled when the first projectile of the prefab follows its path, null if the path has no points
+        private ProjectilePathTable pathTable;
+        private boolean pathSampled;
+
+        Archetype(Prefab prefab) {
+            this.prefab = prefab;
+            this.item = prefab.getComponent(ItemComponent.class);
+            this.location = prefab.getComponent(LocationComponent.class);
+            this.rigidBody = prefab.getComponent(RigidBodyComponent.class);
+            this.projectile = prefab.getComponent(ProjectileComponent.class);
+            this.hitDetection = prefab.getComponent(HitDetectionComponent.class);
+            this.lifespan = prefab.getComponent(LifespanComponent.class);
+            this.pool = prefab.getComponent(ProjectilePoolComponent.class);
+            this.hitZones = prefab.getComponent(HitZoneComponent.class);
+            this.path = prefab.getComponent(ProjectilePathComponent.class);
+        }
+
+        /**
+         * @return false if the prefab has been disposed or reloaded or the archetype has been invalidated
+         */
+        public boolean isValid() {
+            if (invalidated || prefab.isDisposed()) {
+                return false;
+            }
+            if (isReloaded()) {
+                invalidated = true;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * A reloaded prefab has new components
+         */
+        private boolean isReloaded() {
+            return item != prefab.getComponent(ItemComponent.class)
+                    || location != prefab.getComponent(LocationComponent.class)
+                    || rigidBody != prefab.getComponent(RigidBodyComponent.class)
+                    || projectile != prefab.getComponent(ProjectileComponent.class)
+                    || hitDetection != prefab.getComponent(HitDetectionComponent.class)
+                    || lifespan != prefab.getComponent(LifespanComponent.class)
+                    || pool != prefab.getComponent(ProjectilePoolComponent.class)
+                    || hitZones != prefab.getComponent(HitZoneComponent.class)
+                    || path != prefab.getComponent(ProjectilePathComponent.class);
+        }
+
+        public Prefab getPrefab() {
+            return prefab;
+        }
+
+        /**
+         * @return the item of the prefab, e.g. the ammunition a launch uses
+         */
+        public ItemComponent getItem() {
+            return item;
+        }
+
+        public LocationComponent getLocation() {
+            return location;
+        }
+
+        public RigidBodyComponent getRigidBody() {
+            return rigidBody;
+        }
+
+        public ProjectileComponent getProjectile() {
+            return projectile;
+        }
+
+        public HitDetectionComponent getHitDetection() {
+            return hitDetection;
+        }
+
+        public LifespanComponent getLifespan() {
+            return lifespan;
+        }
+
+        /**
+         * @return the pool settings of the prefab or null if the projectiles of the prefab aren't pooled
+         */
+        public ProjectilePoolComponent getPool() {
+            return pool;
+        }
+
+        /**
+         * @return the hit zones of the prefab or null if the creatures of the prefab have no zones
+         */
+        public HitZoneComponent getHitZones() {
+            return hitZones;
+        }
+
+        /**
+         * @return the compiled hit zones of the prefab, shared by all creatures of the prefab whose zones haven't
+         * been changed, or null if the prefab defines no valid zone
+         */
+        public HitZoneTable getHitZoneTable() {
+            if (!hitZonesCompiled) {
+                hitZoneTable = hitZones != null ? HitZoneTable.create(hitZones) : null;
+                hitZonesCompiled = true;
+            }
+            return hitZoneTable;
+        }
+
+        /**
+         * @return the flight path of the prefab or null if the projectiles of the prefab don't follow a path
+         */
+        public ProjectilePathComponent getPath() {
+            return path;
+        }
+
+        /**
+         * @return the arc length table of the path of the prefab, shared by all projectiles of the prefab whose
+         * path hasn't been changed, or null if the prefab has no valid path
+         */
+        public ProjectilePathTable getPathTable() {
+            if (!pathSampled) {
+                pathTable = path != null ? ProjectilePathTable.create(path.type, path.points) : null;
+                pathSampled = true;
+            }
+            return pathTable;
+        }
+    }
+}
@@ -0,0 +1,530 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.bulletphysics.dynamics.RigidBody;
+import org.terasology.combat.components.CorpseComponent;
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.logic.common.lifespan.LifespanComponent;
+import org.terasology.logic.inventory.InventoryComponent;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.math.Vector3i;
+import org.terasology.physics.components.RigidBodyComponent;
+import org.terasology.physics.engine.PhysicsSystem;
+import org.terasology.rendering.logic.MeshComponent;
+
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+
+/**
+ * Keeps the number of corpses within a budget per server and per region (cube of REGION_SIZE blocks).
+ * If a budget is exceeded the oldest corpse (of the region) is evicted. The lifespan of the corpses is managed
+ * here instead of by a LifespanComponent, expired and evicted bodies aren't destroyed but become dormant:
+ * their location, mesh, inventory and rigid body are removed and the body is reused for the next corpse.
+ * Dormant bodies aren't persisted.
+ * <p/>
+ * Corpses are marked with a CorpseComponent. When a corpse is unloaded (deactivate) its age is stored in the
+ * component, when it is loaded again (adopt) it counts towards the budgets and decays with its remaining lifespan.
+ * <p/>
+ * Corpses that came to rest (linear and angular velocity below the thresholds for the settle time) are frozen:
+ * their rigid body is removed, so they leave the physics simulation and keep their last location. A frozen corpse
+ * gets its rigid body back if it is disturbed, i.e. an impulse is applied to it or a block next to it changed.
+ * The frozen state is stored in the CorpseComponent, a frozen corpse that is loaded again stays frozen and gets
+ * a new rigid body of the dead body prefab when it is woken.
+ */
+public class CorpseManager {
+
+    public static final int REGION_SIZE = 32;
+    private static final int MISSING = -1;
+
+    private final DeadEntityFactory deadEntityFactory;
+    private int maxCorpses = 64;
+    private int maxCorpsesPerRegion = 16;
+    private float corpseLifespan = 30f;
+    private float settleTime = 1.5f;
+    private float settleVelocity = 0.1f;
+    private float settleAngularVelocity = 0.2f;
+
+    //live corpses, ordered from the oldest to the youngest
+    private EntityRef[] corpses;
+    private float[] ages;
+    private long[] regions;
+    private float[] settled;
+    //rigid bodies of the frozen corpses, null if the corpse is simulated
+    private RigidBodyComponent[] frozen;
+    private int size;
+    private final LongIntHashMap regionCounts = new LongIntHashMap();
+
+    private EntityRef[] dormant;
+    private RigidBodyComponent[] dormantBodies;
+    private int dormantCount;
+
+    private long evictions;
+    //corpses that are activated while they are spawned are tracked by spawn, not adopted
+    private boolean spawning;
+    private int frozenCount;
+    private Vector3f position = new Vector3f();
+    private Vector3f velocity = new Vector3f();
+
+    public CorpseManager(DeadEntityFactory deadEntityFactory) {
+        this.deadEntityFactory = deadEntityFactory;
+        corpses = new EntityRef[maxCorpses];
+        ages = new float[maxCorpses];
+        regions = new long[maxCorpses];
+        settled = new float[maxCorpses];
+        frozen = new RigidBodyComponent[maxCorpses];
+        dormant = new EntityRef[maxCorpses];
+        dormantBodies = new RigidBodyComponent[maxCorpses];
+    }
+
+    /**
+     * Creates the corpse of the dead entity, a dormant body is reused if there is one.
+     *
+     * @return the corpse or EntityRef.NULL
+     */
+    public EntityRef spawn(EntityRef deadEntity) {
+        LocationComponent location = deadEntity.getComponent(LocationComponent.class);
+        if (location == null) {
+            return EntityRef.NULL;
+        }
+        location.getWorldPosition(position);
+        long region = regionOf(position);
+        makeRoom(region);
+        EntityRef body = EntityRef.NULL;
+        spawning = true;
+        try {
+            while (dormantCount > 0 && !body.exists()) {
+                dormantCount--;
+                EntityRef candidate = dormant[dormantCount];
+                RigidBodyComponent rigidBody = dormantBodies[dormantCount];
+                dormant[dormantCount] = null;
+                dormantBodies[dormantCount] = null;
+                if (candidate.exists()) {
+                    candidate.setPersistent(true);
+                    body = deadEntityFactory.reuse(candidate, rigidBody, deadEntity);
+                }
+            }
+            if (!body.exists()) {
+                body = deadEntityFactory.newInstance(deadEntity);
+                if (body.exists()) {
+                    body.removeComponent(LifespanComponent.class);
+                }
+            }
+            if (body.exists()) {
+                CorpseComponent corpse = body.getComponent(CorpseComponent.class);
+                if (corpse == null) {
+                    body.addComponent(new CorpseComponent());
+                } else {
+                    corpse.age = 0;
+                    corpse.frozen = false;
+                    body.saveComponent(corpse);
+                }
+                insert(body, 0, region);
+            }
+        } finally {
+            spawning = false;
+        }
+        return body;
+    }
+
+    /**
+     * Tracks a corpse that has been loaded, e.g. because its chunk has been loaded again
+     *
+     * @return false if the corpse is already tracked or isn't a corpse
+     */
+    public boolean adopt(EntityRef corpse) {
+        CorpseComponent corpseComponent = corpse.getComponent(CorpseComponent.class);
+        LocationComponent location = corpse.getComponent(LocationComponent.class);
+        if (spawning || corpseComponent == null || location == null || indexOf(corpse) != MISSING) {
+            return false;
+        }
+        location.getWorldPosition(position);
+        long region = regionOf(position);
+        int index = insert(corpse, corpseComponent.age, region);
+        if (corpseComponent.frozen) {
+            RigidBodyComponent body = corpse.getComponent(RigidBodyComponent.class);
+            if (body != null) {
+                //saved before the corpse was frozen
+                setFrozen(index, false);
+            } else {
+                body = deadEntityFactory.newRigidBody();
+                if (body != null) {
+                    frozen[index] = body;
+                    frozenCount++;
+                }
+            }
+        }
+        //the corpse is inserted first, if it is the oldest one it is evicted itself
+        while (size > maxCorpses) {
+            evict(0);
+        }
+        if (regionCounts.get(region, 0) > maxCorpsesPerRegion) {
+            evict(oldestIn(region));
+        }
+        return true;
+    }
+
+    /**
+     * Stops tracking a corpse that is unloaded or destroyed, its age is stored in its CorpseComponent
+     *
+     * @return false if the corpse isn't tracked
+     */
+    public boolean deactivate(EntityRef corpse) {
+        int index = indexOf(corpse);
+        if (index == MISSING) {
+            return false;
+        }
+        store(index);
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Ages the corpses, puts the expired ones to rest and freezes the corpses that settled
+     */
+    public void update(float delta, PhysicsSystem physicsSystem) {
+        int i = 0;
+        while (i < size) {
+            if (!corpses[i].exists()) {
+                removeAt(i);
+            } else if ((ages[i] += delta) > corpseLifespan) {
+                release(i);
+            } else {
+                if (physicsSystem != null && frozen[i] == null) {
+                    updateSettled(i, delta, physicsSystem);
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Gives a frozen corpse its rigid body back
+     *
+     * @return true if the corpse was frozen
+     */
+    public boolean wake(EntityRef corpse) {
+        int index = indexOf(corpse);
+        return index != MISSING && wake(index);
+    }
+
+    /**
+     * Wakes the frozen corpses within the distance of the block, e.g. because the block they rest on is gone
+     *
+     * @return the number of corpses that have been woken
+     */
+    public int wakeNear(Vector3i blockPosition, float distance) {
+        if (frozenCount == 0) {
+            return 0;
+        }
+        int woken = 0;
+        float distanceSquared = distance * distance;
+        for (int i = 0; i < size; i++) {
+            if (frozen[i] == null) {
+                continue;
+            }
+            LocationComponent location = corpses[i].getComponent(LocationComponent.class);
+            if (location != null) {
+                location.getWorldPosition(position);
+                float dx = position.x - blockPosition.x;
+                float dy = position.y - blockPosition.y;
+                float dz = position.z - blockPosition.z;
+                if (dx * dx + dy * dy + dz * dz <= distanceSquared && wake(i)) {
+                    woken++;
+                }
+            }
+        }
+        return woken;
+    }
+
+    /**
+     * Destroys the dormant bodies and stores the age of the live corpses, so corpses that are saved are adopted
+     * with their remaining lifespan when they are loaded.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            if (corpses[i].exists()) {
+                store(i);
+            }
+        }
+        for (int i = 0; i < dormantCount; i++) {
+            if (dormant[i].exists()) {
+                dormant[i].destroy();
+            }
+        }
+        Arrays.fill(corpses, 0, size, null);
+        Arrays.fill(frozen, 0, size, null);
+        Arrays.fill(dormant, 0, dormantCount, null);
+        Arrays.fill(dormantBodies, 0, dormantCount, null);
+        regionCounts.clear();
+        size = 0;
+        dormantCount = 0;
+        frozenCount = 0;
+    }
+
+    /**
+     * @return the number of live corpses
+     */
+    public int getCorpseCount() {
+        return size;
+    }
+
+    /**
+     * @return the number of live corpses that are frozen
+     */
+    public int getFrozenCount() {
+        return frozenCount;
+    }
+
+    /**
+     * @return the number of dormant bodies that can be reused
+     */
+    public int getDormantCount() {
+        return dormantCount;
+    }
+
+    /**
+     * @return the number of corpses that have been evicted because a budget was exceeded
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getMaxCorpses() {
+        return maxCorpses;
+    }
+
+    public void setMaxCorpses(int maxCorpses) {
+        this.maxCorpses = Math.max(1, maxCorpses);
+    }
+
+    public int getMaxCorpsesPerRegion() {
+        return maxCorpsesPerRegion;
+    }
+
+    public void setMaxCorpsesPerRegion(int maxCorpsesPerRegion) {
+        this.maxCorpsesPerRegion = Math.max(1, maxCorpsesPerRegion);
+    }
+
+    public float getCorpseLifespan() {
+        return corpseLifespan;
+    }
+
+    public void setCorpseLifespan(float corpseLifespan) {
+        this.corpseLifespan = corpseLifespan;
+    }
+
+    /**
+     * @param settleTime seconds a corpse has to rest before it is frozen
+     */
+    public void setSettleTime(float settleTime) {
+        this.settleTime = settleTime;
+    }
+
+    public float getSettleTime() {
+        return settleTime;
+    }
+
+    /**
+     * @param settleVelocity linear velocity below which a corpse rests
+     * @param settleAngularVelocity angular velocity below which a corpse rests
+     */
+    public void setSettleVelocity(float settleVelocity, float settleAngularVelocity) {
+        this.settleVelocity = settleVelocity;
+        this.settleAngularVelocity = settleAngularVelocity;
+    }
+
+    private void updateSettled(int index, float delta, PhysicsSystem physicsSystem) {
+        RigidBody rigidBody = physicsSystem.getRigidBodyForEntity(corpses[index]);
+        if (rigidBody == null) {
+            settled[index] = 0;
+            return;
+        }
+        rigidBody.getLinearVelocity(velocity);
+        boolean resting = velocity.lengthSquared() < settleVelocity * settleVelocity;
+        if (resting) {
+            rigidBody.getAngularVelocity(velocity);
+            resting = velocity.lengthSquared() < settleAngularVelocity * settleAngularVelocity;
+        }
+        settled[index] = resting ? settled[index] + delta : 0;
+        if (settled[index] >= settleTime) {
+            RigidBodyComponent body = corpses[index].getComponent(RigidBodyComponent.class);
+            if (body != null) {
+                frozen[index] = body;
+                frozenCount++;
+                corpses[index].removeComponent(RigidBodyComponent.class);
+                setFrozen(index, true);
+            }
+        }
+    }
+
+    private boolean wake(int index) {
+        RigidBodyComponent body = frozen[index];
+        if (body == null) {
+            return false;
+        }
+        frozen[index] = null;
+        frozenCount--;
+        settled[index] = 0;
+        corpses[index].addComponent(body);
+        setFrozen(index, false);
+        return true;
+    }
+
+    /**
+     * Persists the frozen state, a corpse can be saved or unloaded without its rigid body
+     */
+    private void setFrozen(int index, boolean isFrozen) {
+        CorpseComponent corpse = corpses[index].getComponent(CorpseComponent.class);
+        if (corpse != null && corpse.frozen != isFrozen) {
+            corpse.frozen = isFrozen;
+            corpses[index].saveComponent(corpse);
+        }
+    }
+
+    private static long regionOf(Vector3f position) {
+        return BlockCollisionCache.pack((int) Math.floor(position.x / REGION_SIZE),
+                (int) Math.floor(position.y / REGION_SIZE), (int) Math.floor(position.z / REGION_SIZE));
+    }
+
+    private int indexOf(EntityRef corpse) {
+        for (int i = 0; i < size; i++) {
+            if (corpses[i].equals(corpse)) {
+                return i;
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Evicts the oldest corpses until there is room for a corpse in the region
+     */
+    private void makeRoom(long region) {
+        while (size >= maxCorpses) {
+            evict(0);
+        }
+        if (regionCounts.get(region, 0) >= maxCorpsesPerRegion) {
+            evict(oldestIn(region));
+        }
+    }
+
+    /**
+     * Inserts the corpse behind the older corpses
+     */
+    private int insert(EntityRef corpse, float age, long region) {
+        ensureCapacity(size + 1);
+        int index = size;
+        while (index > 0 && ages[index - 1] < age) {
+            index--;
+        }
+        int moved = size - index;
+        System.arraycopy(corpses, index, corpses, index + 1, moved);
+        System.arraycopy(ages, index, ages, index + 1, moved);
+        System.arraycopy(regions, index, regions, index + 1, moved);
+        System.arraycopy(settled, index, settled, index + 1, moved);
+        System.arraycopy(frozen, index, frozen, index + 1, moved);
+        corpses[index] = corpse;
+        ages[index] = age;
+        regions[index] = region;
+        settled[index] = 0;
+        frozen[index] = null;
+        size++;
+        regionCounts.add(region, 1);
+        return index;
+    }
+
+    private void store(int index) {
+        CorpseComponent corpse = corpses[index].getComponent(CorpseComponent.class);
+        if (corpse != null) {
+            //changed in place, the corpse may be in the middle of being unloaded
+            corpse.age = ages[index];
+        }
+    }
+
+    private int oldestIn(long region) {
+        for (int i = 0; i < size; i++) {
+            if (regions[i] == region) {
+                return i;
+            }
+        }
+        return MISSING;
+    }
+
+    private void evict(int index) {
+        if (index != MISSING) {
+            release(index);
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes the corpse from the live corpses and makes it dormant (or destroys it if the pool is full)
+     */
+    private void release(int index) {
+        EntityRef body = corpses[index];
+        RigidBodyComponent frozenBody = frozen[index];
+        removeAt(index);
+        if (!body.exists()) {
+            return;
+        }
+        if (dormantCount < dormant.length && dormantCount < maxCorpses) {
+            RigidBodyComponent rigidBody = frozenBody;
+            if (rigidBody == null) {
+                rigidBody = body.getComponent(RigidBodyComponent.class);
+            }
+            dormantBodies[dormantCount] = rigidBody;
+            body.removeComponent(RigidBodyComponent.class);
+            body.removeComponent(MeshComponent.class);
+            body.removeComponent(InventoryComponent.class);
+            body.removeComponent(LocationComponent.class);
+            body.setPersistent(false);
+            dormant[dormantCount++] = body;
+        } else {
+            body.destroy();
+        }
+    }
+
+    private void removeAt(int index) {
+        if (frozen[index] != null) {
+            frozenCount--;
+        }
+        if (regionCounts.add(regions[index], -1) <= 0) {
+            regionCounts.remove(regions[index], 0);
+        }
+        int moved = size - index - 1;
+        System.arraycopy(corpses, index + 1, corpses, index, moved);
+        System.arraycopy(ages, index + 1, ages, index, moved);
+        System.arraycopy(regions, index + 1, regions, index, moved);
+        System.arraycopy(settled, index + 1, settled, index, moved);
+        System.arraycopy(frozen, index + 1, frozen, index, moved);
+        size--;
+        corpses[size] = null;
+        frozen[size] = null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > corpses.length) {
+            int length = Math.max(capacity, corpses.length * 2);
+            corpses = Arrays.copyOf(corpses, length);
+            ages = Arrays.copyOf(ages, length);
+            regions = Arrays.copyOf(regions, length);
+            settled = Arrays.copyOf(settled, length);
+            frozen = Arrays.copyOf(frozen, length);
+            dormant = Arrays.copyOf(dormant, length);
+            dormantBodies = Arrays.copyOf(dormantBodies, length);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.entitySystem.entity.EntityRef;
+
+import java.util.Arrays;
+
+/**
+ * Collects the damage every target takes in one tick, so the damage is applied once per target.
+ * The damage of every owner is summed per target to keep the attribution, the owner with the largest share
+ * of the damage gets the credit (on a tie the owner that reached the share first).
+ */
+public class DamageAggregator {
+
+    private static final int MISSING = -1;
+
+    private EntityRef[] targets;
+    private int[] totals;
+    private EntityRef[] topOwners;
+    private int[] topDamage;
+    private int size;
+    private final LongIntHashMap indices;
+    //damage per (target id, owner id)
+    private final LongIntHashMap ownerDamage;
+
+    public DamageAggregator(int capacity) {
+        targets = new EntityRef[capacity];
+        totals = new int[capacity];
+        topOwners = new EntityRef[capacity];
+        topDamage = new int[capacity];
+        indices = new LongIntHashMap(capacity);
+        ownerDamage = new LongIntHashMap(capacity);
+    }
+
+    public void add(EntityRef target, EntityRef owner, int amount) {
+        if (owner == null) {
+            owner = EntityRef.NULL;
+        }
+        int index = indices.get(target.getId(), MISSING);
+        if (index == MISSING) {
+            if (size == targets.length) {
+                int capacity = size * 2;
+                targets = Arrays.copyOf(targets, capacity);
+                totals = Arrays.copyOf(totals, capacity);
+                topOwners = Arrays.copyOf(topOwners, capacity);
+                topDamage = Arrays.copyOf(topDamage, capacity);
+            }
+            index = size++;
+            indices.put(target.getId(), index, MISSING);
+            targets[index] = target;
+            totals[index] = 0;
+            topOwners[index] = owner;
+            topDamage[index] = Integer.MIN_VALUE;
+        }
+        totals[index] += amount;
+        int damage = ownerDamage.add(HitRegistry.key(target.getId(), owner.getId()), amount);
+        if (damage > topDamage[index]) {
+            topDamage[index] = damage;
+            topOwners[index] = owner;
+        }
+    }
+
+    /**
+     * @return the number of targets that took damage in this tick
+     */
+    public int size() {
+        return size;
+    }
+
+    public EntityRef getTarget(int index) {
+        return targets[index];
+    }
+
+    public int getTotal(int index) {
+        return totals[index];
+    }
+
+    /**
+     * @return the owner with the largest share of the damage of the target
+     */
+    public EntityRef getTopOwner(int index) {
+        return topOwners[index];
+    }
+
+    public void clear() {
+        Arrays.fill(targets, 0, size, null);
+        Arrays.fill(topOwners, 0, size, null);
+        indices.clear();
+        ownerDamage.clear();
+        size = 0;
+    }
+}
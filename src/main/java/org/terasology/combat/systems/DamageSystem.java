@@ -1,53 +1,232 @@
 package org.terasology.combat.systems;
 
+import com.google.common.collect.Maps;
+import org.terasology.combat.components.CorpseComponent;
+import org.terasology.combat.components.HitZoneComponent;
 import org.terasology.combat.components.ProjectileComponent;
 import org.terasology.combat.events.HitEvent;
+import org.terasology.entitySystem.entity.EntityManager;
 import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.entitySystem.entity.lifecycleEvents.OnChangedComponent;
 import org.terasology.entitySystem.event.ReceiveEvent;
+import org.terasology.entitySystem.prefab.Prefab;
 import org.terasology.entitySystem.systems.BaseComponentSystem;
 import org.terasology.entitySystem.systems.In;
 import org.terasology.entitySystem.systems.RegisterSystem;
+import org.terasology.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.logic.health.DestroyEvent;
 import org.terasology.logic.health.HealthComponent;
 import org.terasology.logic.inventory.ItemComponent;
+import org.terasology.logic.location.LocationComponent;
 import org.terasology.physics.engine.PhysicsSystem;
+import org.terasology.physics.events.ImpulseEvent;
+import org.terasology.registry.CoreRegistry;
+import org.terasology.world.OnChangedBlock;
 import org.terasology.world.block.BlockComponent;
 
+import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
+import java.util.Map;
 
 /**
- * TODO Define hit Zones like,legs,feet,arms,head,organs,hands, fingers
+ * Hit zones (head, legs...) of creatures are defined by the HitZoneComponent and scale the damage of a hit.
  * TODO Handle hit event for non Projectiles collision volumes
  */
 @RegisterSystem
-public class DamageSystem extends BaseComponentSystem {
+public class DamageSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
 
 
-    DeadEntityFactory deadEntityFactory = new DeadEntityFactory();
+    //registered in the CoreRegistry, the LaunchEntityAction looks it up in its postBegin
+    CombatArchetypeCache archetypes;
+    DeadEntityFactory deadEntityFactory;
+    CorpseManager corpses;
+    @In
+    EntityManager entityManager;
     @In
     PhysicsSystem physicsSystem;
 
+    private static final int DAMAGE_CAPACITY = 64;
+    private static final int IMPULSE_CAPACITY = 32;
+    //TODO temporary "exagarated death animation"
+    private static final Vector3f DEATH_IMPULSE = new Vector3f(0, 20, 10);
+    private static final Vector3f DEATH_IMPULSE_POSITION = new Vector3f(0, 0.75f, 2.5f);
+    private static final Vector3f CENTER = new Vector3f();
+    //frozen corpses within this distance of a changed block are woken up
+    private static final float WAKE_DISTANCE = 2f;
+
+    //damage of the projectiles that hit in this tick, applied once per target in update
+    private DamageAggregator damage = new DamageAggregator(DAMAGE_CAPACITY);
+    //death impulses, applied as soon as the rigid body of the corpse exists
+    private DeferredImpulseQueue impulses = new DeferredImpulseQueue(IMPULSE_CAPACITY);
+
+    //the compiled hit zones of creatures without a prefab or with zones other than the zones of their prefab,
+    //until their zones change. Creatures with the zones of their prefab share the table of the archetype
+    private Map<EntityRef, HitZoneTable> entityHitZoneTables = Maps.newHashMap();
+
+    //scratch objects for the push back and the hit zones, hits are handled on the game thread only
+    private Vector3f direction = new Vector3f();
+    private Vector3f position = new Vector3f();
+    private Quat4f rotation = new Quat4f();
+
     @Override
     public void initialise() {
+        archetypes = new CombatArchetypeCache(entityManager);
+        CoreRegistry.put(CombatArchetypeCache.class, archetypes);
+        deadEntityFactory = new DeadEntityFactory(archetypes);
+        corpses = new CorpseManager(deadEntityFactory);
     }
 
     @Override
     public void shutdown() {
+        corpses.clear();
+        archetypes.invalidateAll();
+        entityHitZoneTables.clear();
     }
 
     @ReceiveEvent(components = {ProjectileComponent.class, ItemComponent.class})
     public void onProjectileHit(HitEvent event, EntityRef entity) {
         ProjectileComponent projectileComponent = entity.getComponent(ProjectileComponent.class);
         ItemComponent item = entity.getComponent(ItemComponent.class);
-        event.getOther().send(new DamageEvent(item.baseDamage, projectileComponent.owner));
+        int amount = Math.round(item.baseDamage * getDamageMultiplier(event.getOther(), event.getHitPosition()));
+        if (projectileComponent.aggregateDamage) {
+            damage.add(event.getOther(), projectileComponent.owner, amount);
+        } else {
+            //not pooled like the HitEvent: the DamageEvent isn't an event of this module, it can't be reset and its
+            //receivers (the health system, other modules) are free to keep it. Projectiles that aggregate their
+            //damage create one per target and tick instead of one per hit
+            event.getOther().send(new DamageEvent(amount, projectileComponent.owner));
+        }
         event.cancel();
         pushBack(event);
     }
 
+    /**
+     * Applies the damage of the tick, one DamageEvent per target with the owner that did the most damage as instigator.
+     * The impulses of the corpses are applied once their rigid bodies exist.
+     */
+    @Override
+    public void update(float delta) {
+        for (int i = 0; i < damage.size(); i++) {
+            EntityRef target = damage.getTarget(i);
+            if (target.exists()) {
+                target.send(new DamageEvent(damage.getTotal(i), damage.getTopOwner(i)));
+            }
+        }
+        damage.clear();
+        if (physicsSystem != null && impulses.size() > 0) {
+            impulses.process(physicsSystem, delta);
+        }
+        corpses.update(delta, physicsSystem);
+    }
+
+    /**
+     * Corpses that are loaded again count towards the corpse budget and decay with their remaining lifespan
+     */
+    @ReceiveEvent(components = {CorpseComponent.class, LocationComponent.class})
+    public void onCorpseActivated(OnActivatedComponent event, EntityRef entity) {
+        corpses.adopt(entity);
+    }
+
+    @ReceiveEvent(components = {CorpseComponent.class, LocationComponent.class})
+    public void onCorpseDeactivated(BeforeDeactivateComponent event, EntityRef entity) {
+        corpses.deactivate(entity);
+    }
+
+    /**
+     * A frozen corpse has no rigid body, it is woken up and gets the impulse once its body exists again
+     */
+    @ReceiveEvent(components = {LocationComponent.class})
+    public void onImpulse(ImpulseEvent event, EntityRef entity) {
+        if (physicsSystem != null && corpses.getFrozenCount() > 0 && corpses.wake(entity)) {
+            impulses.offer(entity, event.getImpulse(), CENTER);
+        }
+    }
+
+    @ReceiveEvent(components = {HitZoneComponent.class})
+    public void onHitZonesChanged(OnChangedComponent event, EntityRef entity) {
+        entityHitZoneTables.remove(entity);
+    }
+
+    @ReceiveEvent(components = {HitZoneComponent.class})
+    public void onHitZonesDeactivated(BeforeDeactivateComponent event, EntityRef entity) {
+        entityHitZoneTables.remove(entity);
+    }
+
+    /**
+     * Corpses resting on or next to a changed block have to fall (or be pushed) again
+     */
+    @ReceiveEvent(components = {BlockComponent.class})
+    public void onBlockChanged(OnChangedBlock event, EntityRef blockEntity) {
+        corpses.wakeNear(event.getBlockPosition(), WAKE_DISTANCE);
+    }
+
+    /**
+     * @return the corpse budget and its metrics (live corpses, evictions)
+     */
+    public CorpseManager getCorpseManager() {
+        return corpses;
+    }
+
+    /**
+     * @return the damage multiplier of the hit zone of the target at the hit position, 1 if the target has no zones
+     */
+    public float getDamageMultiplier(EntityRef target, Vector3f hitPosition) {
+        HitZoneComponent hitZones = target.getComponent(HitZoneComponent.class);
+        LocationComponent location = target.getComponent(LocationComponent.class);
+        if (hitZones == null || location == null) {
+            return 1;
+        }
+        HitZoneTable table = getHitZoneTable(target, hitZones);
+        if (table == null) {
+            return 1;
+        }
+        //into the local space of the target, the offset is rotated by the conjugate of the rotation
+        location.getWorldPosition(position);
+        location.getWorldRotation(rotation);
+        float scale = location.getWorldScale();
+        float x = hitPosition.x - position.x;
+        float y = hitPosition.y - position.y;
+        float z = hitPosition.z - position.z;
+        float qx = -rotation.x;
+        float qy = -rotation.y;
+        float qz = -rotation.z;
+        float qw = rotation.w;
+        float cx = 2 * (qy * z - qz * y);
+        float cy = 2 * (qz * x - qx * z);
+        float cz = 2 * (qx * y - qy * x);
+        float localX = x + qw * cx + (qy * cz - qz * cy);
+        float localY = y + qw * cy + (qz * cx - qx * cz);
+        float localZ = z + qw * cz + (qx * cy - qy * cx);
+        if (scale != 0) {
+            localX /= scale;
+            localY /= scale;
+            localZ /= scale;
+        }
+        return table.getMultiplier(table.getZone(localX, localY, localZ));
+    }
+
+    private HitZoneTable getHitZoneTable(EntityRef target, HitZoneComponent hitZones) {
+        Prefab prefab = target.getParentPrefab();
+        if (prefab != null) {
+            CombatArchetypeCache.Archetype archetype = archetypes.get(prefab.getName());
+            if (archetype != null && HitZoneTable.isSameZones(hitZones, archetype.getHitZones())) {
+                return archetype.getHitZoneTable();
+            }
+        }
+        HitZoneTable table = entityHitZoneTables.get(target);
+        if (table == null && !entityHitZoneTables.containsKey(target)) {
+            table = HitZoneTable.create(hitZones);
+            entityHitZoneTables.put(target, table);
+        }
+        return table;
+    }
+
     public void pushBack(HitEvent event) {
         EntityRef other = event.getOther();
         org.terasology.physics.character.CharacterMovementComponent characterMovement = other.getComponent(org.terasology.physics.character.CharacterMovementComponent.class);
-        Vector3f direction = new Vector3f(event.getHitNormal());
+        direction.set(event.getHitNormal());
         direction.scale(3);
         direction.negate();
         if (characterMovement != null) {
@@ -59,14 +238,10 @@ public class DamageSystem extends BaseComponentSystem {
     @ReceiveEvent(components = {HealthComponent.class})
     public void onDeath(DestroyEvent event, EntityRef entity) {
         if (!entity.hasComponent(BlockComponent.class)) {
-            EntityRef deadEntity = deadEntityFactory.newInstance(entity);
+            EntityRef deadEntity = corpses.spawn(entity);
             entity.destroy();
-            //TODO temporary "exagarated death animation"
-            if (physicsSystem != null) {
-                while (physicsSystem.getRigidBodyForEntity(deadEntity) == null) {
-                }
-                ;
-                physicsSystem.getRigidBodyForEntity(deadEntity).applyImpulse(new Vector3f(0, 20, 10), new Vector3f(0, 0.75f, 2.5f));
+            if (physicsSystem != null && deadEntity.exists()) {
+                impulses.offer(deadEntity, DEATH_IMPULSE, DEATH_IMPULSE_POSITION);
             }
         }
     }
@@ -16,22 +16,35 @@
 
 package org.terasology.combat.systems;
 
-import org.terasology.entitySystem.entity.EntityManager;
 import org.terasology.entitySystem.entity.EntityRef;
-import org.terasology.entitySystem.prefab.Prefab;
-import org.terasology.entitySystem.prefab.PrefabManager;
 import org.terasology.logic.common.lifespan.LifespanComponent;
 import org.terasology.logic.inventory.InventoryComponent;
 import org.terasology.logic.location.LocationComponent;
-import org.terasology.registry.CoreRegistry;
+import org.terasology.physics.components.RigidBodyComponent;
 import org.terasology.rendering.logic.MeshComponent;
 
+/**
+ * Creates the corpses of dead entities, the dead body prefab is resolved through the CombatArchetypeCache
+ */
 public class DeadEntityFactory {
 
     private final float corpseDecayDelay = 30f;
     private final String deadBodyPrefab = "combat:deadbody";
+    private final CombatArchetypeCache archetypes;
+    private CombatArchetypeCache.Archetype deadBody;
 
-    public DeadEntityFactory() {
+    public DeadEntityFactory(CombatArchetypeCache archetypes) {
+        this.archetypes = archetypes;
+    }
+
+    /**
+     * @return the archetype of the dead body prefab, resolved again only if the prefab has been reloaded
+     */
+    private CombatArchetypeCache.Archetype getDeadBody() {
+        if (deadBody == null || !deadBody.isValid()) {
+            deadBody = archetypes.get(deadBodyPrefab);
+        }
+        return deadBody;
     }
 
     public EntityRef newInstance(float lifespan) {
@@ -39,13 +52,13 @@ public class DeadEntityFactory {
     }
 
     public EntityRef newInstance(float lifespan, EntityRef deadEntity) {
-        Prefab prefab = CoreRegistry.get(PrefabManager.class).getPrefab(deadBodyPrefab);
+        CombatArchetypeCache.Archetype archetype = getDeadBody();
         LocationComponent location = deadEntity.getComponent(LocationComponent.class);
         MeshComponent meshDeadEntity = deadEntity.getComponent(MeshComponent.class);
         InventoryComponent inventoryComponent = deadEntity.getComponent(InventoryComponent.class);
 
-        if (prefab != null) {
-            EntityRef bodyEntity = CoreRegistry.get(EntityManager.class).create(prefab, location.getWorldPosition());
+        if (archetype != null) {
+            EntityRef bodyEntity = archetypes.getEntityManager().create(archetype.getPrefab(), location.getWorldPosition());
             bodyEntity.addComponent(location);
             bodyEntity.addComponent(meshDeadEntity);
             bodyEntity.addComponent(inventoryComponent);
@@ -58,12 +71,12 @@ public class DeadEntityFactory {
     }
 
     public EntityRef newInstance(EntityRef deadEntity) {
-        Prefab prefab = CoreRegistry.get(PrefabManager.class).getPrefab(deadBodyPrefab);
+        CombatArchetypeCache.Archetype archetype = getDeadBody();
         LocationComponent location = deadEntity.getComponent(LocationComponent.class);
         MeshComponent meshDeadEntity = deadEntity.getComponent(MeshComponent.class);
         InventoryComponent inventoryComponent = deadEntity.getComponent(InventoryComponent.class);
-        if (prefab != null) {
-            EntityRef bodyEntity = CoreRegistry.get(EntityManager.class).create(prefab, location.getWorldPosition());
+        if (archetype != null) {
+            EntityRef bodyEntity = archetypes.getEntityManager().create(archetype.getPrefab(), location.getWorldPosition());
             bodyEntity.addComponent(location);
             bodyEntity.addComponent(meshDeadEntity);
             if (inventoryComponent != null) {
@@ -76,4 +89,43 @@ public class DeadEntityFactory {
         }
         return EntityRef.NULL;
     }
+
+    /**
+     * Turns a dormant body of the CorpseManager into the corpse of the dead entity
+     *
+     * @param rigidBody the rigid body the body had before it became dormant, a copy of the prefab is used if null
+     */
+    public EntityRef reuse(EntityRef body, RigidBodyComponent rigidBody, EntityRef deadEntity) {
+        LocationComponent location = deadEntity.getComponent(LocationComponent.class);
+        MeshComponent meshDeadEntity = deadEntity.getComponent(MeshComponent.class);
+        InventoryComponent inventoryComponent = deadEntity.getComponent(InventoryComponent.class);
+        if (location == null) {
+            return EntityRef.NULL;
+        }
+        body.addComponent(location);
+        if (meshDeadEntity != null) {
+            body.addComponent(meshDeadEntity);
+        }
+        if (inventoryComponent != null) {
+            body.addComponent(inventoryComponent);
+        }
+        if (rigidBody == null) {
+            rigidBody = newRigidBody();
+        }
+        if (rigidBody != null) {
+            body.addComponent(rigidBody);
+        }
+        return body;
+    }
+
+    /**
+     * @return a copy of the rigid body of the dead body prefab or null if the prefab has none
+     */
+    public RigidBodyComponent newRigidBody() {
+        CombatArchetypeCache.Archetype archetype = getDeadBody();
+        if (archetype != null && archetype.getRigidBody() != null) {
+            return archetypes.getEntityManager().getComponentLibrary().copy(archetype.getRigidBody());
+        }
+        return null;
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.bulletphysics.dynamics.RigidBody;
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.physics.engine.PhysicsSystem;
+
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+
+/**
+ * Impulses for entities whose rigid body doesn't exist yet (e.g. a corpse that has just been created).
+ * The impulses are applied by process as soon as the physics engine created the rigid body, impulses of
+ * entities that got no rigid body within the timeout or have been destroyed are dropped.
+ */
+public class DeferredImpulseQueue {
+
+    public static final float DEFAULT_TIMEOUT = 1f;
+
+    private EntityRef[] entities;
+    private float[] impulses;
+    private float[] positions;
+    private float[] ages;
+    private int size;
+    private float timeout = DEFAULT_TIMEOUT;
+    private int timedOut;
+
+    private Vector3f impulse = new Vector3f();
+    private Vector3f position = new Vector3f();
+
+    public DeferredImpulseQueue(int capacity) {
+        entities = new EntityRef[capacity];
+        impulses = new float[capacity * 3];
+        positions = new float[capacity * 3];
+        ages = new float[capacity];
+    }
+
+    /**
+     * Queues the impulse, the vectors are copied
+     *
+     * @param relativePosition position relative to the center of mass the impulse is applied at
+     */
+    public void offer(EntityRef entity, Vector3f impulse, Vector3f relativePosition) {
+        if (size == entities.length) {
+            int capacity = size * 2;
+            entities = Arrays.copyOf(entities, capacity);
+            impulses = Arrays.copyOf(impulses, capacity * 3);
+            positions = Arrays.copyOf(positions, capacity * 3);
+            ages = Arrays.copyOf(ages, capacity);
+        }
+        entities[size] = entity;
+        impulses[size * 3] = impulse.x;
+        impulses[size * 3 + 1] = impulse.y;
+        impulses[size * 3 + 2] = impulse.z;
+        positions[size * 3] = relativePosition.x;
+        positions[size * 3 + 1] = relativePosition.y;
+        positions[size * 3 + 2] = relativePosition.z;
+        ages[size] = 0;
+        size++;
+    }
+
+    /**
+     * Applies the impulses of all entities that have a rigid body now, the others age by delta.
+     *
+     * @return the number of applied impulses
+     */
+    public int process(PhysicsSystem physicsSystem, float delta) {
+        int applied = 0;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            EntityRef entity = entities[i];
+            if (!entity.exists()) {
+                continue;
+            }
+            RigidBody rigidBody = physicsSystem.getRigidBodyForEntity(entity);
+            if (rigidBody != null) {
+                impulse.set(impulses[i * 3], impulses[i * 3 + 1], impulses[i * 3 + 2]);
+                position.set(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]);
+                rigidBody.activate();
+                rigidBody.applyImpulse(impulse, position);
+                applied++;
+                continue;
+            }
+            if (ages[i] + delta > timeout) {
+                timedOut++;
+                continue;
+            }
+            move(i, kept);
+            ages[kept] += delta;
+            kept++;
+        }
+        Arrays.fill(entities, kept, size, null);
+        size = kept;
+        return applied;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout seconds an impulse waits for the rigid body of its entity
+     */
+    public void setTimeout(float timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return the number of impulses that have been dropped because the rigid body didn't appear in time
+     */
+    public int getTimedOut() {
+        return timedOut;
+    }
+
+    public void clear() {
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+    }
+
+    private void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        entities[to] = entities[from];
+        System.arraycopy(impulses, from * 3, impulses, to * 3, 3);
+        System.arraycopy(positions, from * 3, positions, to * 3, 3);
+        ages[to] = ages[from];
+    }
+}
@@ -15,8 +15,58 @@
  */
 package org.terasology.combat.systems;
 
+import org.terasology.combat.components.HitDetectionComponent;
+import org.terasology.entitySystem.entity.EntityRef;
 
+/**
+ * Keeps track of the hits of entities with a HitDetectionComponent, so hits can be limited by the trigger
+ * of the component (once per entity, periodic...).
+ */
 public interface HitDetectionContext {
-//	public void update();
-//	public boolean addHit(EntityRef entity, EntityRef otherEntity);
+
+    /**
+     * @return true if a hit of the entity with the other entity is registered, i.e. the entity can't hit the other
+     * entity again until the hit is removed or expires
+     */
+    boolean checkHit(EntityRef entity, EntityRef otherEntity);
+
+    /**
+     * Registers the hit of the entity with the other entity.
+     *
+     * @return true if the hit has to be handled, false if it is blocked by an earlier hit
+     */
+    boolean addHit(EntityRef entity, EntityRef otherEntity);
+
+    /**
+     * Registers the hit of the entity with the other entity by their ids, for callers that already have the
+     * HitDetectionComponent of the entity (e.g. off the game thread, where components shouldn't be read).
+     *
+     * @return true if the hit has to be handled, false if it is blocked by an earlier hit
+     */
+    boolean addHit(int entity, int otherEntity, HitDetectionComponent hitDetection);
+
+    /**
+     * @return true if a hit was registered
+     */
+    boolean removeHit(EntityRef entity, EntityRef otherEntity);
+
+    /**
+     * Removes all hits the entity takes part in, as attacker or as target
+     */
+    void clear(EntityRef entity);
+
+    /**
+     * Removes all hits the entity with the id takes part in, as attacker or as target
+     */
+    void clear(int entity);
+
+    /**
+     * Expires the hits whose period has passed
+     */
+    void update(float delta);
+
+    /**
+     * @return the number of live hits registered for the trigger
+     */
+    int getCount(HitDetection trigger);
 }
@@ -15,138 +15,212 @@
  */
 package org.terasology.combat.systems;
 
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import org.terasology.combat.components.HitDetectionComponent;
 import org.terasology.entitySystem.entity.EntityRef;
 
-import java.util.HashMap;
-import java.util.HashSet;
+/**
+ * Hit context that keeps the hits of all triggers in one HitRegistry keyed by the ids of the attacker and the
+ * target. PERIODIC hits don't depend on the target and are registered with the null entity as target.
+ * The value of a hit is the game tick at which it expires, all triggers with a time share one timing wheel,
+ * so update only touches the hits that expire in the ticks that passed:
+ * <ul>
+ * <li>PERIODIC, PERIODIC_PER_ENTITY: a hit blocks further hits for the detection period</li>
+ * <li>ON_PERIOD: hits are aligned to multiples of the detection period, all targets of e.g. a damaging zone
+ * are hit in the same tick</li>
+ * <li>ON_CONTACT: a hit when the contact starts, every collision extends the contact by the contact timeout</li>
+ * <li>TIMED_COLLSION_PER_ENTITY: a hit after every detection period of continuous contact, the start of the
+ * contact is kept as auxiliary value</li>
+ * <li>ALWAYS, WHILE_MOVING: every collision is a hit, no state is kept (the speed is checked by the system)</li>
+ * </ul>
+ * The number of hits is capped by maxEntries, if the cap is reached the hits that expire first are evicted.
+ * ONCE_PER_ENTITY hits don't expire and are only evicted if there are no other hits left.
+ */
+public class HitDetectionContextImpl implements HitDetectionContext {
 
+    public static final int TICKS_PER_SECOND = 60;
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+    private static final int WHEEL_SLOTS = 256;
 
-public class HitDetectionContextImpl implements HitDetectionContext {
+    HitRegistry hits = new HitRegistry();
+    HitExpiryWheel expiry = new HitExpiryWheel(hits, WHEEL_SLOTS);
 
-    HashMap<EntityRef, HashSet<EntityRef>> oncePerEntity = Maps.newHashMap();
-    HashMap<EntityRef, HashMap<EntityRef, Float>> periodicPerEntity = Maps.newHashMap();
-    HashMap<EntityRef, Float> periodic = Maps.newHashMap();
+    private double time;
+    private long tick;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long evictions;
 
     public HitDetectionContextImpl() {
     }
 
+    /**
+     * @return the number of ticks of the time, at least one
+     */
+    public static long toTicks(float seconds) {
+        return Math.max(1, Math.round(seconds * TICKS_PER_SECOND));
+    }
+
+    @Override
     public boolean checkHit(EntityRef entity, EntityRef otherEntity) {
-        boolean result = false;
-        HitDetectionComponent hitDetectionComponent = entity.getComponent(HitDetectionComponent.class);
-        if (hitDetectionComponent != null) {
-            switch (hitDetectionComponent.trigger) {
-                case PERIODIC_PER_ENTITY:
-                    HashMap<EntityRef, Float> timedEntity = periodicPerEntity.get(entity);
-                    if (timedEntity != null && !timedEntity.containsKey(otherEntity)) {
-                        result = true;
-                    }
-                    break;
-                case PERIODIC:
-                    result = periodic.containsKey(entity);
-                    break;
-                case ONCE_PER_ENTITY:
-                    HashSet<EntityRef> once = oncePerEntity.get(entity);
-                    if (once != null && !once.contains(otherEntity)) {
-                        result = true;
-                    }
-//					 if(!oncePerEntity.containsKey(entity)){
-//						result = oncePerEntity.get(entity).contains(otherEntity);
-//					}
-                    break;
-                default:
-                    break;
-            }
+        HitDetectionComponent hitDetection = entity.getComponent(HitDetectionComponent.class);
+        if (hitDetection == null || !isTracked(hitDetection.trigger)) {
+            return false;
         }
-        return result;
+        return isLive(key(hitDetection.trigger, entity.getId(), otherEntity.getId()), hitDetection.trigger);
     }
 
-
+    @Override
     public boolean addHit(EntityRef entity, EntityRef otherEntity) {
-        boolean result = false;
-        HitDetectionComponent hitDetectionComponent = entity.getComponent(HitDetectionComponent.class);
-        if (hitDetectionComponent != null) {
-            switch (hitDetectionComponent.trigger) {
-                case PERIODIC_PER_ENTITY:
-                    if (!periodicPerEntity.containsKey(entity)) {
-                        HashMap<EntityRef, Float> entities = Maps.newHashMap();
-                        periodicPerEntity.put(entity, entities);
-                    }
-                    HashMap<EntityRef, Float> timedEntity = periodicPerEntity.get(entity);
-                    if (!timedEntity.containsKey(otherEntity)) {
-                        timedEntity.put(otherEntity, (float) 1);//Should be dynamic  ??
-                        result = true;
-                    }
-                    break;
-                case PERIODIC:
-                    if (!periodic.containsKey(entity)) {
-                        periodic.put(entity, (float) 1);//Shoukd be dynamic
-                        result = true;
-                    }
-                    break;
-                case ONCE_PER_ENTITY:
-                    if (!oncePerEntity.containsKey(entity)) {
-                        HashSet<EntityRef> entities = Sets.newHashSet();
-                        result = entities.add(otherEntity);
-                        oncePerEntity.put(entity, entities);
-                    } else {
-                        result = oncePerEntity.get(entity).add(otherEntity);
-                    }
-                    break;
-                default:
-                    break;
-            }
+        return addHit(entity.getId(), otherEntity.getId(), entity.getComponent(HitDetectionComponent.class));
+    }
+
+    @Override
+    public boolean addHit(int entity, int otherEntity, HitDetectionComponent hitDetection) {
+        if (hitDetection == null) {
+            return false;
         }
-        return result;
+        HitDetection trigger = hitDetection.trigger;
+        if (trigger == HitDetection.ALWAYS || trigger == HitDetection.WHILE_MOVING) {
+            return true;
+        }
+        if (!isTracked(trigger)) {
+            return false;
+        }
+        long key = key(trigger, entity, otherEntity);
+        //a hit that expires in this tick but hasn't been removed by the wheel yet doesn't block the new hit
+        boolean live = isLive(key, trigger);
+        long period = toTicks(hitDetection.detectionPeriod);
+        long deadline;
+        switch (trigger) {
+            case ON_CONTACT:
+                deadline = tick + toTicks(hitDetection.contactTimeout);
+                if (live) {
+                    hits.set(key, deadline);
+                    expiry.schedule(key, deadline);
+                    return false;
+                }
+                break;
+            case TIMED_COLLSION_PER_ENTITY:
+                deadline = tick + toTicks(hitDetection.contactTimeout);
+                long start = live ? hits.getAux(key, tick) : tick;
+                boolean hit = tick - start >= period;
+                ensureCapacity(key);
+                hits.put(key, trigger.ordinal(), deadline, hit ? tick : start);
+                expiry.schedule(key, deadline);
+                return hit;
+            default:
+                if (live) {
+                    return false;
+                }
+                if (trigger == HitDetection.ONCE_PER_ENTITY) {
+                    ensureCapacity(key);
+                    hits.put(key, trigger.ordinal(), HitRegistry.NEVER);
+                    return true;
+                }
+                deadline = trigger == HitDetection.ON_PERIOD ? (tick / period + 1) * period : tick + period;
+                break;
+        }
+        ensureCapacity(key);
+        hits.put(key, trigger.ordinal(), deadline);
+        expiry.schedule(key, deadline);
+        return true;
     }
 
+    @Override
     public boolean removeHit(EntityRef entity, EntityRef otherEntity) {
-        boolean result = false;
-        HitDetectionComponent hitDetectionComponent = entity.getComponent(HitDetectionComponent.class);
-        if (hitDetectionComponent != null) {
-            switch (hitDetectionComponent.trigger) {
-                case PERIODIC_PER_ENTITY:
-                    HashMap<EntityRef, Float> timedEntity = periodicPerEntity.get(entity);
-                    result = timedEntity != null && timedEntity.remove(otherEntity) != null;
-                    break;
-                case PERIODIC:
-                    result = periodic.containsKey(entity) && periodic.remove(entity) != null;
-                    break;
-                case ONCE_PER_ENTITY:
-                    result = oncePerEntity.containsKey(entity) && oncePerEntity.get(entity).remove(otherEntity);
-                    break;
-                default:
-                    break;
-            }
+        HitDetectionComponent hitDetection = entity.getComponent(HitDetectionComponent.class);
+        return hitDetection != null && isTracked(hitDetection.trigger)
+                && hits.remove(key(hitDetection.trigger, entity.getId(), otherEntity.getId()));
+    }
+
+    @Override
+    public void clear(EntityRef entity) {
+        clear(entity.getId());
+    }
+
+    @Override
+    public void clear(int entity) {
+        if (hits.countEntity(entity) > 0) {
+            hits.removeEntity(entity);
         }
-        return result;
     }
 
-    public HashMap<EntityRef, HashSet<EntityRef>> getOncePerEntity() {
-        return oncePerEntity;
+    @Override
+    public void update(float delta) {
+        time += delta;
+        tick = (long) (time * TICKS_PER_SECOND);
+        expiry.advance(tick);
     }
 
-    public void setOncePerEntity(
-            HashMap<EntityRef, HashSet<EntityRef>> oncePerEntity) {
-        this.oncePerEntity = oncePerEntity;
+    @Override
+    public int getCount(HitDetection trigger) {
+        return hits.count(trigger.ordinal());
     }
 
-    public HashMap<EntityRef, HashMap<EntityRef, Float>> getPeriodicPerEntity() {
-        return periodicPerEntity;
+    /**
+     * @return the number of registered hits of all triggers
+     */
+    public int size() {
+        return hits.size();
     }
 
-    public void setPeriodicPerEntity(
-            HashMap<EntityRef, HashMap<EntityRef, Float>> periodicPerEntity) {
-        this.periodicPerEntity = periodicPerEntity;
+    /**
+     * @return the current game tick of the context
+     */
+    public long getTick() {
+        return tick;
     }
 
-    public HashMap<EntityRef, Float> getPeriodic() {
-        return periodic;
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Caps the number of registered hits, surplus hits are evicted with the next hit
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * @return the number of hits that have been evicted because of the cap
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    private void ensureCapacity(long key) {
+        if (hits.size() >= maxEntries && !hits.contains(key)) {
+            evict(hits.size() - maxEntries + 1);
+        }
+    }
+
+    private void evict(int count) {
+        int evicted = expiry.evict(count);
+        if (evicted < count) {
+            evicted += hits.removeAny(HitDetection.ONCE_PER_ENTITY.ordinal(), count - evicted);
+        }
+        evictions += evicted;
+    }
+
+    private boolean isLive(long key, HitDetection trigger) {
+        return hits.getMode(key) == trigger.ordinal() && hits.get(key, tick) > tick;
+    }
+
+    private static boolean isTracked(HitDetection trigger) {
+        switch (trigger) {
+            case ONCE_PER_ENTITY:
+            case PERIODIC:
+            case PERIODIC_PER_ENTITY:
+            case ON_PERIOD:
+            case ON_CONTACT:
+            case TIMED_COLLSION_PER_ENTITY:
+                return true;
+            default:
+                return false;
+        }
     }
 
-    public void setPeriodic(HashMap<EntityRef, Float> periodic) {
-        this.periodic = periodic;
+    private long key(HitDetection trigger, int entity, int otherEntity) {
+        return HitRegistry.key(entity, trigger == HitDetection.PERIODIC ? 0 : otherEntity);
     }
-}
\ No newline at end of file
+}
@@ -15,9 +15,10 @@
  */
 package org.terasology.combat.systems;
 
-import com.google.common.collect.Maps;
+import com.bulletphysics.dynamics.RigidBody;
 import org.terasology.combat.components.HitDetectionComponent;
 import org.terasology.combat.events.HitEvent;
+import org.terasology.combat.events.HitEventPool;
 import org.terasology.entitySystem.entity.EntityRef;
 import org.terasology.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
 import org.terasology.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
@@ -26,26 +27,41 @@ import org.terasology.entitySystem.event.ReceiveEvent;
 import org.terasology.entitySystem.systems.BaseComponentSystem;
 import org.terasology.entitySystem.systems.RegisterSystem;
 import org.terasology.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.physics.engine.PhysicsSystem;
 import org.terasology.physics.events.CollideEvent;
 import org.terasology.registry.CoreRegistry;
+import org.terasology.registry.In;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import javax.vecmath.Vector3f;
 
 @RegisterSystem
 public class HitDetectionSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
 
-    public HitDetectionContextImpl context;
+    @In
+    PhysicsSystem physicsSystem;
+
+    private static final int CONTACT_CAPACITY = 256;
+
+    public HitDetectionContext context;
     private volatile float delta = 0;
+    private CollisionCoalescer contacts = new CollisionCoalescer(CONTACT_CAPACITY);
+    private HitEventPool hitEvents = new HitEventPool(4);
+    private Vector3f hitPoint = new Vector3f();
+    private Vector3f hitNormal = new Vector3f();
+    private Vector3f velocity = new Vector3f();
+    private Vector3f position = new Vector3f();
 
     @Override
     public void initialise() {
-        context = new HitDetectionContextImpl();
+        context = new StripedHitDetectionContext();
         CoreRegistry.put(HitDetectionSystem.class, this);
     }
 
     /**
+     * Collects the contacts of the entity, all contacts with the same entity in this tick are reduced to the
+     * nearest one and handled once in the update.
+     *
      * @param event
      * @param entity
      */
@@ -53,78 +69,98 @@ public class HitDetectionSystem extends BaseComponentSystem implements UpdateSub
     public void onCollision(CollideEvent event, EntityRef entity) {
         EntityRef other = event.getOtherEntity();
         HitDetectionComponent hitDetection = entity.getComponent(HitDetectionComponent.class);
-        if (hitDetection.hitBlocks || !other.hasComponent(org.terasology.world.block.BlockComponent.class)) {
-            if (hitDetection.trigger != HitDetection.DISABLED) {
-                HitEvent hitEvent = new HitEvent(entity, other, event.getHitPoint(), event.getHitNormal());
-                if (hitDetection.trigger == HitDetection.ONCE) {//Collision Event doesnt need to be saved for later checks
-                    hitDetection.trigger = HitDetection.DISABLED;
-                    entity.saveComponent(hitDetection);
-                    entity.send(hitEvent);
-                } else if (context.addHit(entity, other)) {
+        if (hitDetection.trigger != HitDetection.DISABLED
+                && (hitDetection.hitBlocks || !other.hasComponent(org.terasology.world.block.BlockComponent.class))) {
+            LocationComponent location = entity.getComponent(LocationComponent.class);
+            float distance = 0;
+            if (location != null) {
+                location.getWorldPosition(position);
+                position.sub(event.getHitPoint());
+                distance = position.lengthSquared();
+            }
+            contacts.offer(entity, other, event.getHitPoint(), event.getHitNormal(), distance);
+        }
+    }
+
+    /**
+     * Turns the contacts of the tick into hits, the HitEvents are pooled and reused after they have been sent
+     */
+    private synchronized void processContacts() {
+        for (int i = 0; i < contacts.size(); i++) {
+            EntityRef entity = contacts.getInstigator(i);
+            EntityRef other = contacts.getOther(i);
+            HitDetectionComponent hitDetection = entity.getComponent(HitDetectionComponent.class);
+            //a projectile without location went back to its pool after the contact has been collected
+            if (hitDetection == null || !other.exists() || !entity.hasComponent(LocationComponent.class)) {
+                continue;
+            }
+            if (hitDetection.trigger == HitDetection.WHILE_MOVING && !isMoving(entity, hitDetection.minSpeed)) {
+                continue;
+            }
+            boolean hit = false;
+            if (hitDetection.trigger == HitDetection.ONCE) {//Collision Event doesnt need to be saved for later checks
+                hitDetection.trigger = HitDetection.DISABLED;
+                entity.saveComponent(hitDetection);
+                hit = true;
+            } else if (hitDetection.trigger != HitDetection.DISABLED) {
+                hit = context.addHit(entity, other);
+            }
+            if (hit) {
+                contacts.getHitPoint(i, hitPoint);
+                contacts.getHitNormal(i, hitNormal);
+                HitEvent hitEvent = hitEvents.obtain(entity, other, hitPoint, hitNormal);
+                try {
                     entity.send(hitEvent);
+                } finally {
+                    hitEvents.release(hitEvent);
                 }
             }
         }
+        contacts.clear();
     }
 
     @ReceiveEvent(components = {HitDetectionComponent.class}, priority = EventPriority.PRIORITY_NORMAL)
     public void addHitDetection(OnActivatedComponent event, EntityRef entity) {
-        context.getOncePerEntity().remove(entity);
-        context.getPeriodic().remove(entity);
-        context.getPeriodicPerEntity().remove(entity);
+        context.clear(entity);
     }
 
     @ReceiveEvent(components = {HitDetectionComponent.class})
     public void removeHitDetection(BeforeDeactivateComponent event, EntityRef entity) {
-        HitDetectionComponent hitDetection = entity.getComponent(HitDetectionComponent.class);
-        switch (hitDetection.trigger) {
-            case PERIODIC:
-                context.getPeriodic().remove(entity);
-                break;
-            case PERIODIC_PER_ENTITY:
-                context.getPeriodicPerEntity().remove(entity);
-                break;
-            case ONCE_PER_ENTITY:
-                context.getOncePerEntity().remove(entity);
-                break;
-            default:
-                break;
-        }
+        context.clear(entity);
     }
 
-    private synchronized void processHits(float delta) {
+    /**
+     * Evicts the hits of destroyed or unloaded entities, they can be the attacker or the target of a hit
+     */
+    @ReceiveEvent(components = {LocationComponent.class})
+    public void removeEntity(BeforeDeactivateComponent event, EntityRef entity) {
+        context.clear(entity);
+    }
 
-        //Periodic
-        HashMap<EntityRef, Float> removeMap = Maps.newHashMap();
-        for (Map.Entry<EntityRef, Float> entry : context.getPeriodic().entrySet()) {
-            Float test = entry.getValue();
-            test = test - delta;
-            entry.setValue(test);
-            if (test <= 0) {
-                removeMap.put(entry.getKey(), test);
-                entry = null;
-            }
-        }
-        context.setPeriodic(Maps.newHashMap(Maps.difference(context.getPeriodic(), removeMap).entriesOnlyOnLeft()));
-        //PeriodicPer Entity
-        Set<Map.Entry<EntityRef, HashMap<EntityRef, Float>>> entries = context.getPeriodicPerEntity().entrySet();
-        for (Map.Entry<EntityRef, HashMap<EntityRef, Float>> entry : entries) {
-            Set<Map.Entry<EntityRef, Float>> subEntries = entry.getValue().entrySet();
-            if (entry != null && entry.getKey().exists()) {
-                for (Map.Entry<EntityRef, Float> entryTemp : subEntries) {
-                    if (entryTemp != null && (entryTemp.getKey().exists())) {
-                        Float test = entryTemp.getValue();
-                        test = test - delta;
-                        entryTemp.setValue(test);
-                        if (test <= 0) {
-                            entryTemp = null;//Eintrag entfernern
-                        }
-                    }
-                }
-            } else {
-                entry = null;//Eintrag entfernern
+    /**
+     * @return the number of live hits of the trigger, can be used as gauge to detect leaking hits
+     */
+    public int getHitCount(HitDetection trigger) {
+        return context.getCount(trigger);
+    }
+
+    /**
+     * Kinematic projectiles are moved by the ProjectileSystem, other entities by the physics engine
+     */
+    private boolean isMoving(EntityRef entity, float minSpeed) {
+        ProjectileSystem projectileSystem = CoreRegistry.get(ProjectileSystem.class);
+        if (projectileSystem == null || !projectileSystem.getVelocity(entity, velocity)) {
+            RigidBody rigidBody = physicsSystem.getRigidBodyForEntity(entity);
+            if (rigidBody == null) {
+                return false;
             }
+            rigidBody.getLinearVelocity(velocity);
         }
+        return velocity.lengthSquared() >= minSpeed * minSpeed;
+    }
+
+    private synchronized void processHits(float delta) {
+        context.update(delta);
     }
 
     @Override
@@ -132,6 +168,7 @@ public class HitDetectionSystem extends BaseComponentSystem implements UpdateSub
         this.delta += delta;//handle lags
         float consume = this.delta;
         processHits(consume);
+        processContacts();
         this.delta -= consume;
     }
 }
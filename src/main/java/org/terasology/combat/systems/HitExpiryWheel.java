@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import java.util.Arrays;
+
+/**
+ * Timing wheel that removes the hits of a HitRegistry when their deadline (the value of the hit) has passed.
+ * Every hit is scheduled in the bucket of its deadline tick, advancing the wheel only visits the buckets of the
+ * ticks that passed, so the cost per tick depends on the number of expiring hits and not on the number of hits.
+ * Deadlines that are more than one revolution ahead stay in their bucket until their round has come.
+ * <p/>
+ * Entries are removed lazily: if the deadline of a hit has been changed or the hit has been removed, the stale
+ * entry is dropped when its bucket is visited. Buckets are visited in tick order and the entries of a bucket
+ * in the order they have been scheduled, so the expiry order is deterministic.
+ */
+public class HitExpiryWheel {
+
+    private static final long MISSING = Long.MIN_VALUE;
+    private static final int INITIAL_BUCKET_SIZE = 8;
+
+    private final HitRegistry registry;
+    private final long[][] buckets;
+    private final int[] sizes;
+    private final int mask;
+    private long tick;
+
+    /**
+     * @param slots number of buckets, rounded up to a power of two
+     */
+    public HitExpiryWheel(HitRegistry registry, int slots) {
+        int capacity = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+        this.registry = registry;
+        this.buckets = new long[capacity][];
+        this.sizes = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return the last tick the wheel has been advanced to
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Schedules the expiry of the hit, the deadline has to be set as value of the hit in the registry.
+     * A deadline that has already passed expires with the next advance.
+     */
+    public void schedule(long key, long deadline) {
+        int bucket = (int) (Math.max(deadline, tick + 1) & mask);
+        long[] entries = buckets[bucket];
+        if (entries == null) {
+            entries = new long[INITIAL_BUCKET_SIZE];
+            buckets[bucket] = entries;
+        } else if (sizes[bucket] == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+            buckets[bucket] = entries;
+        }
+        entries[sizes[bucket]++] = key;
+    }
+
+    /**
+     * Removes all hits whose deadline is before or at the tick from the registry.
+     *
+     * @return the number of expired hits
+     */
+    public int advance(long toTick) {
+        if (toTick <= tick) {
+            return 0;
+        }
+        //every bucket is visited at most once, the last visit of a bucket expires all its deadlines up to toTick
+        long from = Math.max(tick + 1, toTick - mask);
+        int expired = 0;
+        for (long current = from; current <= toTick; current++) {
+            expired += expire((int) (current & mask), current);
+        }
+        tick = toTick;
+        return expired;
+    }
+
+    /**
+     * Removes up to count hits from the registry, starting with the hits that expire first.
+     * The first pass removes the hits that expire within the next revolution in deadline order (the order within
+     * a tick is the scheduling order), the second pass removes hits of later rounds.
+     *
+     * @return the number of removed hits
+     */
+    public int evict(int count) {
+        int evicted = 0;
+        for (int pass = 0; pass < 2 && evicted < count; pass++) {
+            long limit = pass == 0 ? tick + mask + 1 : HitRegistry.NEVER - 1;
+            for (long current = tick + 1; current <= tick + mask + 1 && evicted < count; current++) {
+                evicted += evict((int) (current & mask), limit, count - evicted);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Drops all scheduled entries without touching the registry
+     */
+    public void clear() {
+        Arrays.fill(sizes, 0);
+    }
+
+    private int expire(int bucket, long current) {
+        int size = sizes[bucket];
+        if (size == 0) {
+            return 0;
+        }
+        long[] entries = buckets[bucket];
+        int kept = 0;
+        int expired = 0;
+        for (int i = 0; i < size; i++) {
+            long key = entries[i];
+            long deadline = registry.get(key, MISSING);
+            if (deadline == MISSING || deadline == HitRegistry.NEVER) {
+                continue;//removed or doesn't expire anymore
+            }
+            if (deadline <= current) {
+                registry.remove(key);
+                expired++;
+            } else if ((deadline & mask) == bucket) {
+                entries[kept++] = key;//a later round
+            }//else the deadline has been changed and the hit is scheduled in another bucket
+        }
+        sizes[bucket] = kept;
+        return expired;
+    }
+
+    private int evict(int bucket, long limit, int count) {
+        int size = sizes[bucket];
+        long[] entries = buckets[bucket];
+        int kept = 0;
+        int evicted = 0;
+        for (int i = 0; i < size; i++) {
+            long key = entries[i];
+            long deadline = registry.get(key, MISSING);
+            if (deadline == MISSING || deadline == HitRegistry.NEVER || (deadline > tick && (deadline & mask) != bucket)) {
+                continue;//stale
+            }
+            if (evicted < count && deadline <= limit) {
+                registry.remove(key);
+                evicted++;
+            } else {
+                entries[kept++] = key;
+            }
+        }
+        sizes[bucket] = kept;
+        return evicted;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import java.util.Arrays;
+
+/**
+ * Registry of the hits between two entities, keyed by the packed ids of the attacker and the target.
+ * Every hit has a mode (the ordinal of the HitDetection trigger it has been registered for) and a long value,
+ * the game tick at which the hit expires, and an auxiliary long for the state of the trigger (e.g. the tick
+ * the contact started). The registry is an open addressing table with linear probing and backward shift
+ * deletion like the LongIntHashMap, so lookups and updates don't allocate.
+ * <p/>
+ * The registry counts the hits every entity takes part in, as attacker or as target, so the hits of an entity
+ * can be removed when it is destroyed without searching the table for entities that have no hits.
+ */
+public class HitRegistry {
+
+    /**
+     * Value of hits that don't expire
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+    public static final int MISSING_MODE = -1;
+    private static final int MAX_MODES = 32;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private long[] values;
+    private long[] aux;
+    private byte[] modes;
+    private boolean[] used;
+    private int size;
+    private int mask;
+    private int resizeAt;
+    private final int[] modeCounts = new int[MAX_MODES];
+    //number of hits of every entity id
+    private final LongIntHashMap participants = new LongIntHashMap();
+
+    public HitRegistry() {
+        this(64);
+    }
+
+    public HitRegistry(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Packs the ids of the attacker and the target into one key, the attacker in the upper 32 bits.
+     * Hits that don't depend on the target use 0 (the id of the null entity) as target.
+     */
+    public static long key(int attacker, int target) {
+        return ((long) attacker << 32) | (target & 0xFFFFFFFFL);
+    }
+
+    public static int attackerOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int targetOf(long key) {
+        return (int) key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of hits registered with the mode
+     */
+    public int count(int mode) {
+        return modeCounts[mode];
+    }
+
+    /**
+     * @return the number of hits the entity takes part in
+     */
+    public int countEntity(int id) {
+        return participants.get(id, 0);
+    }
+
+    public boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the value of the hit or missingValue if the hit isn't registered
+     */
+    public long get(long key, long missingValue) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : missingValue;
+    }
+
+    /**
+     * @return the mode of the hit or MISSING_MODE if the hit isn't registered
+     */
+    public int getMode(long key) {
+        int index = indexOf(key);
+        return index >= 0 ? modes[index] : MISSING_MODE;
+    }
+
+    /**
+     * @return the auxiliary value of the hit or missingValue if the hit isn't registered
+     */
+    public long getAux(long key, long missingValue) {
+        int index = indexOf(key);
+        return index >= 0 ? aux[index] : missingValue;
+    }
+
+    /**
+     * Registers the hit with the mode and the value, a registered hit is replaced.
+     */
+    public void put(long key, int mode, long value) {
+        put(key, mode, value, 0);
+    }
+
+    /**
+     * Registers the hit with the mode, the value and the auxiliary value, a registered hit is replaced.
+     */
+    public void put(long key, int mode, long value, long auxValue) {
+        int index = LongIntHashMap.hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) {
+                modeCounts[modes[index]]--;
+                modeCounts[mode]++;
+                modes[index] = (byte) mode;
+                values[index] = value;
+                aux[index] = auxValue;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        used[index] = true;
+        keys[index] = key;
+        values[index] = value;
+        aux[index] = auxValue;
+        modes[index] = (byte) mode;
+        modeCounts[mode]++;
+        participants.add(attackerOf(key), 1);
+        if (targetOf(key) != 0) {
+            participants.add(targetOf(key), 1);
+        }
+        if (++size > resizeAt) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Sets the value of a registered hit
+     *
+     * @return false if the hit isn't registered
+     */
+    public boolean set(long key, long value) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        values[index] = value;
+        return true;
+    }
+
+    /**
+     * @return true if the hit was registered
+     */
+    public boolean remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Removes all hits the entity takes part in, as attacker or as target.
+     * Needs a pass over the table if the entity has any hits.
+     *
+     * @return the number of removed hits
+     */
+    public int removeEntity(int id) {
+        int remaining = participants.get(id, 0);
+        int removed = 0;
+        int i = 0;
+        while (remaining > 0 && i < keys.length) {
+            if (used[i] && (attackerOf(keys[i]) == id || targetOf(keys[i]) == id)) {
+                removeAt(i);//the next entry of the probe sequence may have been shifted into i
+                removed++;
+                remaining--;
+            } else {
+                i++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes up to count hits of the mode in table order
+     *
+     * @return the number of removed hits
+     */
+    public int removeAny(int mode, int count) {
+        int removed = 0;
+        int i = 0;
+        while (removed < count && modeCounts[mode] > 0 && i < keys.length) {
+            if (used[i] && modes[i] == mode) {
+                removeAt(i);
+                removed++;
+            } else {
+                i++;
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(used, false);
+            Arrays.fill(modeCounts, 0);
+            participants.clear();
+            size = 0;
+        }
+    }
+
+    private int indexOf(long key) {
+        int index = LongIntHashMap.hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        long key = keys[index];
+        modeCounts[modes[index]]--;
+        release(attackerOf(key));
+        if (targetOf(key) != 0) {
+            release(targetOf(key));
+        }
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (used[next]) {
+            int home = LongIntHashMap.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                aux[gap] = aux[next];
+                modes[gap] = modes[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[gap] = false;
+        size--;
+    }
+
+    private void release(int id) {
+        if (participants.add(id, -1) <= 0) {
+            participants.remove(id, 0);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        aux = new long[capacity];
+        modes = new byte[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        long[] oldAux = aux;
+        byte[] oldModes = modes;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int index = LongIntHashMap.hash(oldKeys[i]) & mask;
+                while (used[index]) {
+                    index = (index + 1) & mask;
+                }
+                used[index] = true;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                aux[index] = oldAux[i];
+                modes[index] = oldModes[i];
+            }
+        }
+    }
+}
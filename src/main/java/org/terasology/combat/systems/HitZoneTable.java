@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.combat.components.HitZoneComponent;
+
+import javax.vecmath.Vector3f;
+import java.util.List;
+
+/**
+ * Lookup table of the hit zones of a creature. The bounds of all zones are split into a grid and every cell
+ * stores the zone that covers its center, so the zone of a hit position is found in constant time without a
+ * physics query. The table is immutable and shared by all creatures of a prefab whose zones are the zones of the
+ * prefab.
+ */
+public final class HitZoneTable {
+
+    public static final int NO_ZONE = -1;
+    private static final int MAX_RESOLUTION = 32;
+    //hits this far (in cells) outside of the bounds still hit the outer cells, hits on a face are off by rounding
+    private static final float EPSILON = 0.001f;
+
+    private final String[] names;
+    private final float[] multipliers;
+    //zone index + 1 of every cell, 0 is no zone
+    private final byte[] cells;
+    private final int resolution;
+    private final float minX;
+    private final float minY;
+    private final float minZ;
+    private final float scaleX;
+    private final float scaleY;
+    private final float scaleZ;
+
+    private HitZoneTable(String[] names, float[] multipliers, byte[] cells, int resolution,
+                         float minX, float minY, float minZ, float scaleX, float scaleY, float scaleZ) {
+        this.names = names;
+        this.multipliers = multipliers;
+        this.cells = cells;
+        this.resolution = resolution;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.scaleZ = scaleZ;
+    }
+
+    /**
+     * @return the table of the zones or null if the component defines no valid zone
+     */
+    public static HitZoneTable create(HitZoneComponent component) {
+        int count = Math.min(Math.min(component.min.size(), component.max.size()), Byte.MAX_VALUE);
+        if (count == 0) {
+            return null;
+        }
+        float[] lower = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] upper = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < count; i++) {
+            Vector3f min = component.min.get(i);
+            Vector3f max = component.max.get(i);
+            lower[0] = Math.min(lower[0], Math.min(min.x, max.x));
+            lower[1] = Math.min(lower[1], Math.min(min.y, max.y));
+            lower[2] = Math.min(lower[2], Math.min(min.z, max.z));
+            upper[0] = Math.max(upper[0], Math.max(min.x, max.x));
+            upper[1] = Math.max(upper[1], Math.max(min.y, max.y));
+            upper[2] = Math.max(upper[2], Math.max(min.z, max.z));
+        }
+        int resolution = Math.max(1, Math.min(MAX_RESOLUTION, component.resolution));
+        float[] cellSize = new float[3];
+        for (int axis = 0; axis < 3; axis++) {
+            cellSize[axis] = Math.max(upper[axis] - lower[axis], 0.001f) / resolution;
+        }
+        byte[] cells = new byte[resolution * resolution * resolution];
+        for (int x = 0; x < resolution; x++) {
+            float cx = lower[0] + (x + 0.5f) * cellSize[0];
+            for (int y = 0; y < resolution; y++) {
+                float cy = lower[1] + (y + 0.5f) * cellSize[1];
+                for (int z = 0; z < resolution; z++) {
+                    float cz = lower[2] + (z + 0.5f) * cellSize[2];
+                    for (int i = 0; i < count; i++) {
+                        if (contains(component.min.get(i), component.max.get(i), cx, cy, cz)) {
+                            cells[(x * resolution + y) * resolution + z] = (byte) (i + 1);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        String[] names = new String[count];
+        float[] multipliers = new float[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = i < component.names.size() ? component.names.get(i) : "";
+            Float multiplier = i < component.multipliers.size() ? component.multipliers.get(i) : null;
+            multipliers[i] = multiplier != null ? multiplier : 1;
+        }
+        return new HitZoneTable(names, multipliers, cells, resolution, lower[0], lower[1], lower[2],
+                1 / cellSize[0], 1 / cellSize[1], 1 / cellSize[2]);
+    }
+
+    /**
+     * @return true if both components define the same zones, the lists are compared by index so a hit doesn't
+     * allocate an iterator
+     */
+    public static boolean isSameZones(HitZoneComponent a, HitZoneComponent b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.resolution != b.resolution) {
+            return false;
+        }
+        return isSame(a.names, b.names) && isSame(a.min, b.min) && isSame(a.max, b.max)
+                && isSame(a.multipliers, b.multipliers);
+    }
+
+    /**
+     * @return the zone at the position in the local space of the creature or NO_ZONE
+     */
+    public int getZone(float x, float y, float z) {
+        int cellX = getCell((x - minX) * scaleX);
+        int cellY = getCell((y - minY) * scaleY);
+        int cellZ = getCell((z - minZ) * scaleZ);
+        if (cellX < 0 || cellY < 0 || cellZ < 0 || cellX >= resolution || cellY >= resolution || cellZ >= resolution) {
+            return NO_ZONE;
+        }
+        return cells[(cellX * resolution + cellY) * resolution + cellZ] - 1;
+    }
+
+    /**
+     * @return the damage multiplier of the zone, 1 for NO_ZONE
+     */
+    public float getMultiplier(int zone) {
+        return zone == NO_ZONE ? 1 : multipliers[zone];
+    }
+
+    /**
+     * @return the name of the zone, null for NO_ZONE
+     */
+    public String getName(int zone) {
+        return zone == NO_ZONE ? null : names[zone];
+    }
+
+    /**
+     * @return the cell of the position in cells, positions on (or within EPSILON of) the faces of the bounds are
+     * clamped to the outer cells
+     */
+    private int getCell(float position) {
+        if (position < 0) {
+            return position >= -EPSILON ? 0 : -1;
+        }
+        if (position >= resolution) {
+            return position <= resolution + EPSILON ? resolution - 1 : resolution;
+        }
+        return (int) position;
+    }
+
+    private static boolean isSame(List<?> a, List<?> b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            Object value = a.get(i);
+            if (value == null ? b.get(i) != null : !value.equals(b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(Vector3f min, Vector3f max, float x, float y, float z) {
+        return x >= Math.min(min.x, max.x) && x <= Math.max(min.x, max.x)
+                && y >= Math.min(min.y, max.y) && y <= Math.max(min.y, max.y)
+                && z >= Math.min(min.z, max.z) && z <= Math.max(min.z, max.z);
+    }
+}
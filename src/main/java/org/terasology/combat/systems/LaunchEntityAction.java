@@ -16,14 +16,18 @@
 package org.terasology.combat.systems;
 
 import com.bulletphysics.linearmath.QuaternionUtil;
+import com.google.common.collect.Maps;
 import org.terasology.combat.components.LaunchEntityComponent;
 import org.terasology.combat.components.ProjectileComponent;
+import org.terasology.combat.components.ProjectilePoolComponent;
+import org.terasology.entitySystem.entity.EntityBuilder;
 import org.terasology.entitySystem.entity.EntityManager;
 import org.terasology.entitySystem.entity.EntityRef;
 import org.terasology.entitySystem.event.ReceiveEvent;
 import org.terasology.entitySystem.prefab.Prefab;
 import org.terasology.entitySystem.systems.BaseComponentSystem;
 import org.terasology.entitySystem.systems.RegisterSystem;
+import org.terasology.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.logic.characters.CharacterComponent;
 import org.terasology.logic.common.ActivateEvent;
 import org.terasology.logic.inventory.InventoryComponent;
@@ -31,6 +35,7 @@ import org.terasology.logic.inventory.InventoryManager;
 import org.terasology.logic.inventory.ItemComponent;
 import org.terasology.logic.location.LocationComponent;
 import org.terasology.math.TeraMath;
+import org.terasology.registry.CoreRegistry;
 import org.terasology.registry.In;
 
 import javax.vecmath.Quat4f;
@@ -40,17 +45,70 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
+ * Projectiles of prefabs with a ProjectilePoolComponent are launched from a ProjectilePool.
+ *
  * @author aherber
  */
 @RegisterSystem
-public class LaunchEntityAction extends BaseComponentSystem {
+public class LaunchEntityAction extends BaseComponentSystem implements UpdateSubscriberSystem {
+
+    private static final Vector3f FORWARD = new Vector3f(0, 0, 1);
 
     @In
     EntityManager entityManager;
     @In
     InventoryManager inventorySystem;
+    //prefabs of the launched entities, owned by the DamageSystem
+    private CombatArchetypeCache archetypes;
+    //scratch objects of the spawn, the values are copied into the LocationComponent of the projectile
+    private Quat4f lookRotation = new Quat4f();
+    private Vector3f spawnPosition = new Vector3f();
+    //pools of the prefabs with a ProjectilePoolComponent, created in postBegin or when a reloaded prefab is launched
+    private Map<CombatArchetypeCache.Archetype, ProjectilePool> pools = Maps.newHashMap();
+
+    /**
+     * The DamageSystem registers the archetypes in its initialise. The pools are warmed here, so the first shots
+     * don't create the projectile entities.
+     */
+    @Override
+    public void postBegin() {
+        archetypes = CoreRegistry.get(CombatArchetypeCache.class);
+        for (Prefab prefab : entityManager.getPrefabManager().listPrefabs(ProjectilePoolComponent.class)) {
+            CombatArchetypeCache.Archetype archetype = archetypes.get(prefab.getName());
+            if (archetype != null) {
+                getPool(archetype);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (ProjectilePool pool : pools.values()) {
+            pool.clear();
+        }
+        pools.clear();
+    }
+
+    /**
+     * Puts the expired pooled projectiles back into their pools, pools of reloaded prefabs are dropped
+     */
+    @Override
+    public void update(float delta) {
+        Iterator<ProjectilePool> iterator = pools.values().iterator();
+        while (iterator.hasNext()) {
+            ProjectilePool pool = iterator.next();
+            if (pool.getArchetype().isValid()) {
+                pool.update(delta);
+            } else {
+                pool.clear();
+                iterator.remove();
+            }
+        }
+    }
 
     @ReceiveEvent(components = {LaunchEntityComponent.class, ItemComponent.class})
     public void onActivate(ActivateEvent event, EntityRef entity) {
@@ -58,37 +116,59 @@ public class LaunchEntityAction extends BaseComponentSystem {
         LocationComponent instigatorLocation = instigator.getComponent(LocationComponent.class);
         LaunchEntityComponent launchEntityComponent = entity.getComponent(LaunchEntityComponent.class);
         ItemComponent itemComponent = entity.getComponent(ItemComponent.class);
-        Vector3f direction = new Vector3f(event.getDirection());
-        Prefab prefab = entityManager.getPrefabManager().getPrefab(launchEntityComponent.entity);
-        if (prefab != null) {
+        Vector3f direction = new Vector3f(event.getDirection());//owned by the projectile as its initial velocity
+        CombatArchetypeCache.Archetype archetype = archetypes.get(launchEntityComponent.entity);
+        if (archetype != null) {
+            Prefab prefab = archetype.getPrefab();
             if (launchEntityComponent.useAmmunition) {
-                ItemComponent item = prefab.getComponent(ItemComponent.class);
+                ItemComponent item = archetype.getItem();
                 if (!inventorySystem.removeItemFromIventory(instigator, item, 1)) {//Ammunition should not be fixed value
                     return;
                 }
             }
-            LocationComponent projectileLocation = prefab.getComponent(LocationComponent.class);
+            ProjectilePool pool = getPool(archetype);
+            EntityBuilder builder = null;
+            LocationComponent projectileLocation = new LocationComponent();
+            if (pool != null) {
+                if (archetype.getLocation() != null) {
+                    projectileLocation = entityManager.getComponentLibrary().copy(archetype.getLocation());
+                }
+            } else {
+                //the builder holds copies of the prefab components, the prefab itself is never changed
+                builder = entityManager.newBuilder(prefab);
+                if (builder.hasComponent(LocationComponent.class)) {
+                    projectileLocation = builder.getComponent(LocationComponent.class);
+                } else {
+                    builder.addComponent(projectileLocation);
+                }
+            }
             if (launchEntityComponent.useMouseLookForRotation) {
-                Quat4f lookRotation = new Quat4f();
                 //TODO this should use the CameraComponent when ready
                 CharacterComponent localPlayerComponent = instigator.getComponent(CharacterComponent.class);
                 QuaternionUtil.setEuler(lookRotation, TeraMath.DEG_TO_RAD * localPlayerComponent.viewYaw, TeraMath.DEG_TO_RAD * localPlayerComponent.viewPitch, 0);
-                QuaternionUtil.quatRotate(lookRotation, new Vector3f(0, 0, 1), direction);
+                QuaternionUtil.quatRotate(lookRotation, FORWARD, direction);
                 projectileLocation.setLocalRotation(lookRotation);
-                Vector3f spawnPosition = new Vector3f(instigatorLocation.getLocalPosition());
+                spawnPosition.set(instigatorLocation.getLocalPosition());
                 spawnPosition.x += direction.x * launchEntityComponent.spawnDistance;
                 spawnPosition.y += direction.y * launchEntityComponent.spawnDistance + 0.5f;//TODO this shouldn't be a fixed value
                 spawnPosition.z += direction.z * launchEntityComponent.spawnDistance;
                 projectileLocation.setLocalPosition(spawnPosition);
             }
             direction.scale(launchEntityComponent.distancePerSecond * (itemComponent.chargeTime / itemComponent.maxChargeTime));
-            //TODO find a better way to copy entity;
-            EntityRef temp = entityManager.create(prefab, projectileLocation.getLocalPosition());
-            EntityRef projectile = entityManager.copy(temp);
-            temp.destroy();
-            ProjectileComponent projectileComponent = projectile.getComponent(ProjectileComponent.class);
-            projectileComponent.initialVelocity = direction;
-            projectile.saveComponent(projectileComponent);
+            if (pool != null) {
+                if (pool.launch(projectileLocation, direction, instigator).exists()) {
+                    return;
+                }
+                //all pooled projectiles are in flight, this one is a regular entity that expires by its lifespan
+                builder = entityManager.newBuilder(prefab);
+                builder.addComponent(projectileLocation);
+            }
+            ProjectileComponent projectileComponent = builder.getComponent(ProjectileComponent.class);
+            if (projectileComponent != null) {
+                projectileComponent.initialVelocity = direction;
+                projectileComponent.owner = instigator;
+            }
+            builder.build();
 //        	if(projectile.hasComponent(RigidBodyComponent.class)){
 //        		RigidBodyComponent rigidBodyComponent = projectile.getComponent(RigidBodyComponent.class);
 //        		if(!rigidBodyComponent.kinematic){
@@ -103,6 +183,22 @@ public class LaunchEntityAction extends BaseComponentSystem {
         }
     }
 
+    /**
+     * @return the pool of the prefab or null if its projectiles aren't pooled
+     */
+    private ProjectilePool getPool(CombatArchetypeCache.Archetype archetype) {
+        if (archetype.getPool() == null) {
+            return null;
+        }
+        ProjectilePool pool = pools.get(archetype);
+        if (pool == null) {
+            pool = new ProjectilePool(entityManager, archetype, archetype.getPool().size);
+            pool.warm();
+            pools.put(archetype, pool);
+        }
+        return pool;
+    }
+
     public static Object clone(Object copyObject) {
         try {
             ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
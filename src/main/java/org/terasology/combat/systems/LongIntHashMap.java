@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from primitive long keys to int values.
+ * Uses linear probing and backward shift deletion, so neither lookups nor updates allocate
+ * (the tables only grow if the map exceeds its capacity).
+ */
+public class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Spreads the bits of the key, packed keys often only differ in a few bits.
+     */
+    public static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the value of the key or missingValue if the key isn't mapped
+     */
+    public int get(long key, int missingValue) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : missingValue;
+    }
+
+    /**
+     * @return the previous value of the key or missingValue if the key wasn't mapped
+     */
+    public int put(long key, int value, int missingValue) {
+        int index = hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) {
+                int previous = values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        used[index] = true;
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeAt) {
+            resize(keys.length * 2);
+        }
+        return missingValue;
+    }
+
+    /**
+     * Adds delta to the value of the key, a missing key is treated as 0.
+     *
+     * @return the new value
+     */
+    public int add(long key, int delta) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            values[index] += delta;
+            return values[index];
+        }
+        put(key, delta, 0);
+        return delta;
+    }
+
+    /**
+     * @return the removed value or missingValue if the key wasn't mapped
+     */
+    public int remove(long key, int missingValue) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return missingValue;
+        }
+        int value = values[index];
+        removeAt(index);
+        return value;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(used, false);
+            size = 0;
+        }
+    }
+
+    private int indexOf(long key) {
+        int index = hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the entry and shifts the following entries of the probe sequence back, so no tombstones are needed
+     */
+    private void removeAt(int index) {
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (used[next]) {
+            int home = hash(keys[next]) & mask;
+            //move the entry into the gap if its home slot is not between the gap and its current slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[gap] = false;
+        size--;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i], 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Integrates the velocity of the projectiles that are marked as MOVED and calculates the length of the segment
+ * they move in this step. Every projectile is integrated by the time that passed since it has been moved the
+ * last time, which is longer than one step for projectiles with a lower level of detail.
+ * Projectiles that follow a path get the velocity that moves them to their next point on the path.
+ * Only the primitive arrays of the slots in the range are touched, so ranges can be integrated in parallel.
+ * Every slot is calculated with the same operations regardless of the split, the result is identical to a
+ * single threaded run.
+ */
+public class ProjectileIntegrator extends RecursiveAction {
+
+    /**
+     * Ranges smaller than this are integrated by a single task
+     */
+    public static final int CHUNK_SIZE = 256;
+
+    private final ProjectileStore projectiles;
+    private final int from;
+    private final int to;
+    private final float gravityX;
+    private final float gravityY;
+    private final float gravityZ;
+
+    public ProjectileIntegrator(ProjectileStore projectiles, int from, int to, float gravityX, float gravityY, float gravityZ) {
+        this.projectiles = projectiles;
+        this.from = from;
+        this.to = to;
+        this.gravityX = gravityX;
+        this.gravityY = gravityY;
+        this.gravityZ = gravityZ;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= CHUNK_SIZE) {
+            integrate(projectiles, from, to, gravityX, gravityY, gravityZ);
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ProjectileIntegrator(projectiles, from, middle, gravityX, gravityY, gravityZ),
+                    new ProjectileIntegrator(projectiles, middle, to, gravityX, gravityY, gravityZ));
+        }
+    }
+
+    public static void integrate(ProjectileStore projectiles, int from, int to, float gravityX, float gravityY, float gravityZ) {
+        for (int slot = from; slot < to; slot++) {
+            if ((projectiles.flags[slot] & ProjectileStore.MOVED) == 0) {
+                continue;
+            }
+            float step = projectiles.pendingTime[slot];
+            projectiles.pendingTime[slot] = 0;
+            projectiles.prevX[slot] = projectiles.posX[slot];
+            projectiles.prevY[slot] = projectiles.posY[slot];
+            projectiles.prevZ[slot] = projectiles.posZ[slot];
+            if ((projectiles.flags[slot] & ProjectileStore.PATH) != 0 && moveAlongPath(projectiles, slot, step)) {
+                continue;
+            }
+            //Gravity
+            if ((projectiles.flags[slot] & ProjectileStore.GRAVITY) != 0) {
+                projectiles.velX[slot] += gravityX * step;
+                projectiles.velY[slot] += gravityY * step;
+                projectiles.velZ[slot] += gravityZ * step;
+            }
+            projectiles.stepLength[slot] = projectiles.speed(slot) * step;
+        }
+    }
+
+    /**
+     * Sets the velocity and the segment that move the projectile to the point on its path it reaches in this step.
+     * If the projectile already is at the end of the path, it leaves the path with the direction of the path end.
+     *
+     * @return false if the projectile left the path and is moved by its velocity
+     */
+    public static boolean moveAlongPath(ProjectileStore projectiles, int slot, float step) {
+        ProjectilePathTable path = projectiles.path[slot];
+        float speed = projectiles.pathSpeed[slot];
+        float qx = projectiles.originRotX[slot];
+        float qy = projectiles.originRotY[slot];
+        float qz = projectiles.originRotZ[slot];
+        float qw = projectiles.originRotW[slot];
+        float x;
+        float y;
+        float z;
+        boolean onPath = projectiles.pathDistance[slot] < path.getLength();
+        if (onPath) {
+            float distance = Math.min(projectiles.pathDistance[slot] + speed * step, path.getLength());
+            projectiles.pathDistance[slot] = distance;
+            x = path.x(distance);
+            y = path.y(distance);
+            z = path.z(distance);
+        } else {
+            int last = ProjectilePathTable.SAMPLES;
+            float endDistance = path.getLength();
+            float beforeEnd = endDistance * (last - 1) / last;
+            x = path.x(endDistance) - path.x(beforeEnd);
+            y = path.y(endDistance) - path.y(beforeEnd);
+            z = path.z(endDistance) - path.z(beforeEnd);
+        }
+        //rotate into the launch space: v + 2w(q x v) + 2q x (q x v)
+        float cx = 2 * (qy * z - qz * y);
+        float cy = 2 * (qz * x - qx * z);
+        float cz = 2 * (qx * y - qy * x);
+        float rx = x + qw * cx + (qy * cz - qz * cy);
+        float ry = y + qw * cy + (qz * cx - qx * cz);
+        float rz = z + qw * cz + (qx * cy - qy * cx);
+        if (onPath) {
+            float dx = projectiles.originX[slot] + rx - projectiles.posX[slot];
+            float dy = projectiles.originY[slot] + ry - projectiles.posY[slot];
+            float dz = projectiles.originZ[slot] + rz - projectiles.posZ[slot];
+            float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            if (step > 0) {
+                projectiles.velX[slot] = dx / step;
+                projectiles.velY[slot] = dy / step;
+                projectiles.velZ[slot] = dz / step;
+            }
+            projectiles.stepLength[slot] = length;
+            return true;
+        }
+        float length = (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+        if (length > 0) {
+            projectiles.velX[slot] = rx / length * speed;
+            projectiles.velY[slot] = ry / length * speed;
+            projectiles.velZ[slot] = rz / length * speed;
+        }
+        projectiles.clearPath(slot);
+        return false;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import java.util.Arrays;
+
+/**
+ * Distance based level of detail for the movement of projectiles.
+ * Projectiles near an observer are moved every step. Projectiles further away are moved every few steps with the
+ * time of the skipped steps merged into one longer segment, and they are not rotated until they are near again.
+ * The tiers are reassigned every REASSIGN_INTERVAL steps.
+ */
+public class ProjectileLod {
+
+    public static final byte NEAR = 0;
+    public static final byte MID = 1;
+    public static final byte FAR = 2;
+    public static final int REASSIGN_INTERVAL = 15;
+
+    private float nearDistance = 48;
+    private float farDistance = 160;
+    private int midInterval = 2;
+    private int farInterval = 6;
+
+    private int[] tierCount = new int[3];
+    private float[] observers = new float[3 * 8];
+    private int observerCount;
+    private long step;
+
+    public void clearObservers() {
+        observerCount = 0;
+    }
+
+    public void addObserver(float x, float y, float z) {
+        if (observers.length < (observerCount + 1) * 3) {
+            observers = Arrays.copyOf(observers, observers.length * 2);
+        }
+        int index = observerCount++ * 3;
+        observers[index] = x;
+        observers[index + 1] = y;
+        observers[index + 2] = z;
+    }
+
+    /**
+     * Starts the next step.
+     *
+     * @return true if the tiers should be reassigned in this step
+     */
+    public boolean nextStep() {
+        return step++ % REASSIGN_INTERVAL == 0;
+    }
+
+    /**
+     * Assigns the tier of every projectile by the distance to the nearest observer
+     */
+    public void assign(ProjectileStore projectiles) {
+        Arrays.fill(tierCount, 0);
+        float nearSquared = nearDistance * nearDistance;
+        float farSquared = farDistance * farDistance;
+        for (int slot = 0; slot < projectiles.size(); slot++) {
+            float nearest = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < observerCount * 3; i += 3) {
+                float dx = projectiles.posX[slot] - observers[i];
+                float dy = projectiles.posY[slot] - observers[i + 1];
+                float dz = projectiles.posZ[slot] - observers[i + 2];
+                nearest = Math.min(nearest, dx * dx + dy * dy + dz * dz);
+            }
+            byte tier = nearest <= nearSquared ? NEAR : nearest <= farSquared ? MID : FAR;
+            projectiles.tier[slot] = tier;
+            tierCount[tier]++;
+        }
+    }
+
+    /**
+     * @return true if the projectile in the slot is moved in the current step. Projectiles are staggered by the
+     * phase they got when they were added, so the projectiles of one tier are not all moved in the same step and a
+     * projectile keeps its interval when it is moved to another slot.
+     */
+    public boolean isDue(ProjectileStore projectiles, int slot) {
+        switch (projectiles.tier[slot]) {
+            case MID:
+                return (step + projectiles.phase[slot]) % midInterval == 0;
+            case FAR:
+                return (step + projectiles.phase[slot]) % farInterval == 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return the number of projectiles in the tier at the last reassignment, so the counts can be up to
+     * REASSIGN_INTERVAL steps old. Projectiles added since then are near and not counted.
+     */
+    public int getTierCount(byte tier) {
+        return tierCount[tier];
+    }
+
+    public float getNearDistance() {
+        return nearDistance;
+    }
+
+    public void setNearDistance(float nearDistance) {
+        this.nearDistance = nearDistance;
+    }
+
+    public float getFarDistance() {
+        return farDistance;
+    }
+
+    public void setFarDistance(float farDistance) {
+        this.farDistance = farDistance;
+    }
+
+    public int getMidInterval() {
+        return midInterval;
+    }
+
+    public void setMidInterval(int midInterval) {
+        this.midInterval = Math.max(1, midInterval);
+    }
+
+    public int getFarInterval() {
+        return farInterval;
+    }
+
+    public void setFarInterval(int farInterval) {
+        this.farInterval = Math.max(1, farInterval);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.combat.components.ProjectilePathComponent;
+
+import javax.vecmath.Vector3f;
+import java.util.List;
+
+/**
+ * Arc length table of a projectile path. The curve is sampled once and resampled into points with a uniform
+ * distance along the curve, so the position at a travelled distance is a table lookup and a linear interpolation.
+ * The positions are relative to the first point of the path. The table is immutable and shared by all
+ * projectiles of a prefab.
+ */
+public final class ProjectilePathTable {
+
+    public static final int SAMPLES = 64;
+    private static final int CURVE_SAMPLES = 512;
+
+    private final float[] x = new float[SAMPLES + 1];
+    private final float[] y = new float[SAMPLES + 1];
+    private final float[] z = new float[SAMPLES + 1];
+    private final float length;
+    private final float spacing;
+
+    private ProjectilePathTable(float[] curveX, float[] curveY, float[] curveZ) {
+        float[] distances = new float[curveX.length];
+        for (int i = 1; i < curveX.length; i++) {
+            float dx = curveX[i] - curveX[i - 1];
+            float dy = curveY[i] - curveY[i - 1];
+            float dz = curveZ[i] - curveZ[i - 1];
+            distances[i] = distances[i - 1] + (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+        length = distances[distances.length - 1];
+        spacing = length / SAMPLES;
+        int k = 0;
+        for (int i = 0; i <= SAMPLES; i++) {
+            float distance = i * spacing;
+            while (k < distances.length - 2 && distances[k + 1] < distance) {
+                k++;
+            }
+            float segment = distances[k + 1] - distances[k];
+            float t = segment > 0 ? Math.min(1, (distance - distances[k]) / segment) : 0;
+            x[i] = curveX[k] + (curveX[k + 1] - curveX[k]) * t - curveX[0];
+            y[i] = curveY[k] + (curveY[k + 1] - curveY[k]) * t - curveY[0];
+            z[i] = curveZ[k] + (curveZ[k + 1] - curveZ[k]) * t - curveZ[0];
+        }
+    }
+
+    /**
+     * @return true if both components have the same curve, the speed isn't part of the table
+     */
+    public static boolean isSamePath(ProjectilePathComponent a, ProjectilePathComponent b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.type != b.type || a.points.size() != b.points.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.points.size(); i++) {
+            if (!a.points.get(i).equals(b.points.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the table of the path or null if the path has less than two points or no length
+     */
+    public static ProjectilePathTable create(ProjectilePath type, List<Vector3f> points) {
+        if (points == null || points.size() < 2) {
+            return null;
+        }
+        float[] curveX = new float[CURVE_SAMPLES + 1];
+        float[] curveY = new float[CURVE_SAMPLES + 1];
+        float[] curveZ = new float[CURVE_SAMPLES + 1];
+        Vector3f point = new Vector3f();
+        for (int i = 0; i <= CURVE_SAMPLES; i++) {
+            float u = (float) i / CURVE_SAMPLES;
+            switch (type) {
+                case BEZIER:
+                    bezier(points, u, point);
+                    break;
+                case CATMULL_ROM:
+                    catmullRom(points, u, point);
+                    break;
+                default:
+                    linear(points, u, point);
+                    break;
+            }
+            curveX[i] = point.x;
+            curveY[i] = point.y;
+            curveZ[i] = point.z;
+        }
+        ProjectilePathTable table = new ProjectilePathTable(curveX, curveY, curveZ);
+        return table.length > 0 ? table : null;
+    }
+
+    public float getLength() {
+        return length;
+    }
+
+    public float x(float distance) {
+        int index = index(distance);
+        return x[index] + (x[index + 1] - x[index]) * fraction(distance, index);
+    }
+
+    public float y(float distance) {
+        int index = index(distance);
+        return y[index] + (y[index + 1] - y[index]) * fraction(distance, index);
+    }
+
+    public float z(float distance) {
+        int index = index(distance);
+        return z[index] + (z[index + 1] - z[index]) * fraction(distance, index);
+    }
+
+    private int index(float distance) {
+        int index = (int) (distance / spacing);
+        return Math.max(0, Math.min(SAMPLES - 1, index));
+    }
+
+    private float fraction(float distance, int index) {
+        return Math.max(0, Math.min(1, distance / spacing - index));
+    }
+
+    private static void linear(List<Vector3f> points, float u, Vector3f out) {
+        float position = u * (points.size() - 1);
+        int index = Math.min((int) position, points.size() - 2);
+        out.interpolate(points.get(index), points.get(index + 1), position - index);
+    }
+
+    /**
+     * de Casteljau evaluation, only used to build the table
+     */
+    private static void bezier(List<Vector3f> points, float u, Vector3f out) {
+        Vector3f[] temp = new Vector3f[points.size()];
+        for (int i = 0; i < temp.length; i++) {
+            temp[i] = new Vector3f(points.get(i));
+        }
+        for (int level = temp.length - 1; level > 0; level--) {
+            for (int i = 0; i < level; i++) {
+                temp[i].interpolate(temp[i + 1], u);
+            }
+        }
+        out.set(temp[0]);
+    }
+
+    private static void catmullRom(List<Vector3f> points, float u, Vector3f out) {
+        int last = points.size() - 1;
+        float position = u * last;
+        int index = Math.min((int) position, last - 1);
+        float t = position - index;
+        Vector3f p0 = points.get(Math.max(0, index - 1));
+        Vector3f p1 = points.get(index);
+        Vector3f p2 = points.get(index + 1);
+        Vector3f p3 = points.get(Math.min(last, index + 2));
+        float t2 = t * t;
+        float t3 = t2 * t;
+        out.x = catmullRom(p0.x, p1.x, p2.x, p3.x, t, t2, t3);
+        out.y = catmullRom(p0.y, p1.y, p2.y, p3.y, t, t2, t3);
+        out.z = catmullRom(p0.z, p1.z, p2.z, p3.z, t, t2, t3);
+    }
+
+    private static float catmullRom(float p0, float p1, float p2, float p3, float t, float t2, float t3) {
+        return 0.5f * (2 * p1 + (p2 - p0) * t + (2 * p0 - 5 * p1 + 4 * p2 - p3) * t2 + (3 * p1 - p0 - 3 * p2 + p3) * t3);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.google.common.collect.Lists;
+import org.terasology.combat.components.ProjectileComponent;
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.entity.EntityBuilder;
+import org.terasology.entitySystem.entity.EntityManager;
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.logic.common.lifespan.LifespanComponent;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.physics.components.TriggerComponent;
+
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pool of the projectiles of one prefab. Dormant projectiles are entities of the prefab without a location, so
+ * they aren't simulated, rendered or moved by the ProjectileSystem. A launch resets the components a flight
+ * changes (projectile, hit detection, rigid body, trigger) from the prefab and adds the location, which activates
+ * the projectile. The lifespan of a launched projectile is managed here instead of by a LifespanComponent,
+ * an expired projectile loses its location again and goes back to the pool. Only launched projectiles are
+ * persistent.
+ * <p/>
+ * Removing the location deactivates the projectile in the ProjectileSystem and the HitDetectionSystem (the hits
+ * of the entity id are removed). The ProjectileSystem applies removals in its next update, so a projectile that
+ * went back to the pool can be launched again after the next update of the pool.
+ */
+public class ProjectilePool {
+
+    private final EntityManager entityManager;
+    private final CombatArchetypeCache.Archetype archetype;
+    private final int capacity;
+    private final float lifespan;
+    //components of the prefab that are reset on launch
+    private final List<Component> templates = Lists.newArrayList();
+
+    //launched projectiles, ordered from the oldest to the youngest
+    private EntityRef[] active;
+    private float[] ages;
+    private int activeCount;
+
+    private EntityRef[] dormant;
+    private int dormantCount;
+    //projectiles that went back to the pool since the last update
+    private EntityRef[] released;
+    private int releasedCount;
+
+    private long created;
+    private long launched;
+
+    public ProjectilePool(EntityManager entityManager, CombatArchetypeCache.Archetype archetype, int capacity) {
+        this.entityManager = entityManager;
+        this.archetype = archetype;
+        this.capacity = Math.max(0, capacity);
+        LifespanComponent lifespanTemplate = archetype.getLifespan();
+        this.lifespan = lifespanTemplate != null ? lifespanTemplate.lifespan : Float.POSITIVE_INFINITY;
+        addTemplate(archetype.getHitDetection());
+        addTemplate(archetype.getRigidBody());
+        addTemplate(archetype.getPrefab().getComponent(TriggerComponent.class));
+        active = new EntityRef[this.capacity];
+        ages = new float[this.capacity];
+        dormant = new EntityRef[this.capacity];
+        released = new EntityRef[this.capacity];
+    }
+
+    public CombatArchetypeCache.Archetype getArchetype() {
+        return archetype;
+    }
+
+    /**
+     * Creates dormant projectiles until the pool is full
+     */
+    public void warm() {
+        while (activeCount + dormantCount + releasedCount < capacity) {
+            dormant[dormantCount++] = createDormant();
+        }
+    }
+
+    /**
+     * Launches a dormant projectile with the location, the initial velocity and the owner
+     *
+     * @return the projectile or EntityRef.NULL if all projectiles of the pool are in flight
+     */
+    public EntityRef launch(LocationComponent location, Vector3f velocity, EntityRef owner) {
+        EntityRef projectile = obtain();
+        if (!projectile.exists()) {
+            return EntityRef.NULL;
+        }
+        ProjectileComponent projectileTemplate = archetype.getProjectile();
+        if (projectileTemplate != null) {
+            ProjectileComponent projectileComponent = entityManager.getComponentLibrary().copy(projectileTemplate);
+            projectileComponent.initialVelocity = velocity;
+            projectileComponent.owner = owner;
+            reset(projectile, projectileComponent);
+        }
+        for (Component template : templates) {
+            reset(projectile, entityManager.getComponentLibrary().copy(template));
+        }
+        projectile.setPersistent(true);
+        projectile.addComponent(location);
+        active[activeCount] = projectile;
+        ages[activeCount] = 0;
+        activeCount++;
+        launched++;
+        return projectile;
+    }
+
+    /**
+     * Ages the launched projectiles and puts the expired ones back into the pool
+     */
+    public void update(float delta) {
+        for (int i = 0; i < releasedCount; i++) {
+            dormant[dormantCount++] = released[i];
+            released[i] = null;
+        }
+        releasedCount = 0;
+        int i = 0;
+        while (i < activeCount) {
+            if (!active[i].exists()) {
+                removeAt(i);
+            } else if ((ages[i] += delta) > lifespan) {
+                EntityRef projectile = active[i];
+                removeAt(i);
+                projectile.removeComponent(LocationComponent.class);
+                projectile.setPersistent(false);
+                released[releasedCount++] = projectile;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Destroys the dormant projectiles and hands the launched ones back to the LifespanSystem with their remaining
+     * lifespan, so projectiles that are saved still expire.
+     */
+    public void clear() {
+        for (int i = 0; i < activeCount; i++) {
+            if (active[i].exists() && lifespan != Float.POSITIVE_INFINITY) {
+                LifespanComponent lifespanComponent = new LifespanComponent();
+                lifespanComponent.lifespan = Math.max(0, lifespan - ages[i]);
+                active[i].addComponent(lifespanComponent);
+            }
+        }
+        for (int i = 0; i < dormantCount; i++) {
+            if (dormant[i].exists()) {
+                dormant[i].destroy();
+            }
+        }
+        for (int i = 0; i < releasedCount; i++) {
+            if (released[i].exists()) {
+                released[i].destroy();
+            }
+        }
+        Arrays.fill(active, 0, activeCount, null);
+        Arrays.fill(dormant, 0, dormantCount, null);
+        Arrays.fill(released, 0, releasedCount, null);
+        activeCount = 0;
+        dormantCount = 0;
+        releasedCount = 0;
+    }
+
+    /**
+     * @return the number of projectiles in flight
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * @return the number of projectiles that can be launched
+     */
+    public int getDormantCount() {
+        return dormantCount;
+    }
+
+    /**
+     * @return the number of projectile entities the pool has created
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return the number of launches, launches - created is the number of entity creations the pool saved
+     */
+    public long getLaunched() {
+        return launched;
+    }
+
+    private EntityRef obtain() {
+        while (dormantCount > 0) {
+            EntityRef projectile = dormant[--dormantCount];
+            dormant[dormantCount] = null;
+            if (projectile.exists()) {
+                return projectile;
+            }
+        }
+        if (activeCount + releasedCount < capacity) {
+            return createDormant();
+        }
+        return EntityRef.NULL;
+    }
+
+    private EntityRef createDormant() {
+        EntityBuilder builder = entityManager.newBuilder(archetype.getPrefab());
+        builder.removeComponent(LocationComponent.class);
+        builder.removeComponent(LifespanComponent.class);
+        created++;
+        //dormant projectiles are created again by the next session, they aren't saved
+        EntityRef projectile = builder.build();
+        projectile.setPersistent(false);
+        return projectile;
+    }
+
+    private void addTemplate(Component template) {
+        if (template != null) {
+            templates.add(template);
+        }
+    }
+
+    private static void reset(EntityRef projectile, Component component) {
+        if (projectile.hasComponent(component.getClass())) {
+            projectile.saveComponent(component);
+        } else {
+            projectile.addComponent(component);
+        }
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(active, index + 1, active, index, activeCount - index - 1);
+        System.arraycopy(ages, index + 1, ages, index, activeCount - index - 1);
+        activeCount--;
+        active[activeCount] = null;
+    }
+}
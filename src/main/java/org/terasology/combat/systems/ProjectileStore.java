@@ -0,0 +1,366 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.google.common.collect.Maps;
+import org.terasology.combat.components.ProjectileComponent;
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.physics.components.RigidBodyComponent;
+
+import javax.vecmath.Quat4f;
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Dense struct-of-arrays state of all projectiles that are moved by the ProjectileSystem.
+ * Every projectile owns one slot. Removing a projectile moves the last slot into the gap, so the
+ * arrays always stay contiguous from 0 to size.
+ * The store is the authoritative state while a projectile is in flight, the components are only
+ * written back if the state really changed (e.g. a collision has been handled).
+ */
+public class ProjectileStore {
+
+    public static final int GRAVITY = 1;
+    public static final int PIERCING = 1 << 1;
+    public static final int RICCOCHET = 1 << 2;
+    public static final int REFLECT = 1 << 3;
+    public static final int BOUNCE = 1 << 4;
+    public static final int VELOCITY_ROTATION = 1 << 5;
+    public static final int RIGID = 1 << 6;     //has a RigidBodyComponent
+    public static final int KINEMATIC = 1 << 7; //translated by the ProjectileSystem (kinematic or no rigid body)
+    //state of the simulation, kept when the slot is reloaded
+    public static final int PATH = 1 << 8;      //follows a ProjectilePathTable
+    public static final int MOVED = 1 << 9;     //moved in the last fixed step
+    public static final int RETIRED = 1 << 10;  //waiting for removal, not moved anymore
+    private static final int TRANSIENT = PATH | MOVED | RETIRED;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    int size;
+    EntityRef[] entities = new EntityRef[INITIAL_CAPACITY];
+    float[] posX = new float[INITIAL_CAPACITY];
+    float[] posY = new float[INITIAL_CAPACITY];
+    float[] posZ = new float[INITIAL_CAPACITY];
+    //position before the last fixed step, used to interpolate the render pose
+    float[] prevX = new float[INITIAL_CAPACITY];
+    float[] prevY = new float[INITIAL_CAPACITY];
+    float[] prevZ = new float[INITIAL_CAPACITY];
+    float[] velX = new float[INITIAL_CAPACITY];
+    float[] velY = new float[INITIAL_CAPACITY];
+    float[] velZ = new float[INITIAL_CAPACITY];
+    //pose that was written to the LocationComponent the last time, to save only changed components
+    float[] writtenX = new float[INITIAL_CAPACITY];
+    float[] writtenY = new float[INITIAL_CAPACITY];
+    float[] writtenZ = new float[INITIAL_CAPACITY];
+    float[] rotatedX = new float[INITIAL_CAPACITY];
+    float[] rotatedY = new float[INITIAL_CAPACITY];
+    float[] rotatedZ = new float[INITIAL_CAPACITY];
+    //length of the segment the projectile moves in the current step
+    float[] stepLength = new float[INITIAL_CAPACITY];
+    //time that passed since the projectile has been moved the last time, see ProjectileLod
+    float[] pendingTime = new float[INITIAL_CAPACITY];
+    byte[] tier = new byte[INITIAL_CAPACITY];
+    //offset of the lod steps of the projectile, assigned once so the swap on removal doesn't change it
+    int[] phase = new int[INITIAL_CAPACITY];
+    int[] flags = new int[INITIAL_CAPACITY];
+    //cached sweep parameters, resolved once per projectile
+    short[] triggerFilter = new short[INITIAL_CAPACITY];
+    short[] collisionFilter = new short[INITIAL_CAPACITY];
+    float[] radius = new float[INITIAL_CAPACITY];
+
+    //flight path, the path is evaluated in the space of the launch position and rotation
+    ProjectilePathTable[] path = new ProjectilePathTable[INITIAL_CAPACITY];
+    float[] pathDistance = new float[INITIAL_CAPACITY];
+    float[] pathSpeed = new float[INITIAL_CAPACITY];
+    float[] originX = new float[INITIAL_CAPACITY];
+    float[] originY = new float[INITIAL_CAPACITY];
+    float[] originZ = new float[INITIAL_CAPACITY];
+    float[] originRotX = new float[INITIAL_CAPACITY];
+    float[] originRotY = new float[INITIAL_CAPACITY];
+    float[] originRotZ = new float[INITIAL_CAPACITY];
+    float[] originRotW = new float[INITIAL_CAPACITY];
+
+    private Map<EntityRef, Integer> slots = Maps.newHashMap();
+    private int nextPhase;
+
+    public int size() {
+        return size;
+    }
+
+    public int indexOf(EntityRef entity) {
+        Integer slot = slots.get(entity);
+        return slot != null ? slot : -1;
+    }
+
+    public EntityRef getEntity(int slot) {
+        return entities[slot];
+    }
+
+    /**
+     * Adds the projectile to the store and loads its state from the components.
+     *
+     * @return the slot of the projectile or -1 if the entity is missing a required component
+     */
+    public int add(EntityRef entity) {
+        int slot = indexOf(entity);
+        if (slot >= 0) {
+            return slot;
+        }
+        ProjectileComponent projectile = entity.getComponent(ProjectileComponent.class);
+        LocationComponent location = entity.getComponent(LocationComponent.class);
+        if (projectile == null || location == null) {
+            return -1;
+        }
+        ensureCapacity(size + 1);
+        slot = size++;
+        entities[slot] = entity;
+        slots.put(entity, slot);
+        Vector3f position = location.getWorldPosition();
+        posX[slot] = position.x;
+        posY[slot] = position.y;
+        posZ[slot] = position.z;
+        prevX[slot] = position.x;
+        prevY[slot] = position.y;
+        prevZ[slot] = position.z;
+        writtenX[slot] = position.x;
+        writtenY[slot] = position.y;
+        writtenZ[slot] = position.z;
+        rotatedX[slot] = Float.NaN;
+        rotatedY[slot] = Float.NaN;
+        rotatedZ[slot] = Float.NaN;
+        flags[slot] = 0;
+        path[slot] = null;
+        pendingTime[slot] = 0;
+        tier[slot] = ProjectileLod.NEAR;
+        phase[slot] = nextPhase++ & Integer.MAX_VALUE;
+        load(slot, projectile, entity.getComponent(RigidBodyComponent.class));
+        triggerFilter[slot] = 0;
+        collisionFilter[slot] = 0;
+        radius[slot] = Float.NaN;
+        return slot;
+    }
+
+    /**
+     * Removes the projectile by moving the last slot into its place.
+     */
+    public boolean remove(EntityRef entity) {
+        Integer removed = slots.remove(entity);
+        if (removed == null) {
+            return false;
+        }
+        int slot = removed;
+        int last = --size;
+        if (slot != last) {
+            move(last, slot);
+            slots.put(entities[slot], slot);
+        }
+        entities[last] = null;
+        path[last] = null;
+        return true;
+    }
+
+    /**
+     * Lets the projectile follow the path, starting at its current position and oriented by the rotation.
+     */
+    public void setPath(int slot, ProjectilePathTable table, float speed, Quat4f rotation) {
+        path[slot] = table;
+        pathDistance[slot] = 0;
+        pathSpeed[slot] = speed;
+        originX[slot] = posX[slot];
+        originY[slot] = posY[slot];
+        originZ[slot] = posZ[slot];
+        originRotX[slot] = rotation.x;
+        originRotY[slot] = rotation.y;
+        originRotZ[slot] = rotation.z;
+        originRotW[slot] = rotation.w;
+        flags[slot] |= PATH;
+    }
+
+    /**
+     * The projectile continues with its velocity instead of following its path
+     */
+    public void clearPath(int slot) {
+        path[slot] = null;
+        flags[slot] &= ~PATH;
+    }
+
+    /**
+     * Reloads velocity and flags of the slot from the components of the projectile.
+     *
+     * @return true if the velocity or the flags of the projectile changed
+     */
+    public boolean load(int slot, ProjectileComponent projectile, RigidBodyComponent rigidBody) {
+        boolean changed = velX[slot] != projectile.initialVelocity.x || velY[slot] != projectile.initialVelocity.y
+                || velZ[slot] != projectile.initialVelocity.z;
+        velX[slot] = projectile.initialVelocity.x;
+        velY[slot] = projectile.initialVelocity.y;
+        velZ[slot] = projectile.initialVelocity.z;
+        int state = 0;
+        state |= projectile.effectedByGravity ? GRAVITY : 0;
+        state |= projectile.piercing ? PIERCING : 0;
+        state |= projectile.riccochet ? RICCOCHET : 0;
+        state |= projectile.reflect ? REFLECT : 0;
+        state |= projectile.bounce ? BOUNCE : 0;
+        state |= projectile.velocityBasedRotation ? VELOCITY_ROTATION : 0;
+        state |= rigidBody != null ? RIGID : 0;
+        state |= rigidBody == null || rigidBody.kinematic ? KINEMATIC : 0;
+        changed |= state != (flags[slot] & ~TRANSIENT);
+        flags[slot] = state | (flags[slot] & TRANSIENT);
+        return changed;
+    }
+
+    /**
+     * Writes the velocity of the slot back into the component. Does not save the component.
+     */
+    public void store(int slot, ProjectileComponent projectile) {
+        projectile.initialVelocity.set(velX[slot], velY[slot], velZ[slot]);
+    }
+
+    public boolean hasFlag(int slot, int flag) {
+        return (flags[slot] & flag) != 0;
+    }
+
+    public float speed(int slot) {
+        return (float) Math.sqrt(velX[slot] * velX[slot] + velY[slot] * velY[slot] + velZ[slot] * velZ[slot]);
+    }
+
+    public void getPosition(int slot, Vector3f out) {
+        out.set(posX[slot], posY[slot], posZ[slot]);
+    }
+
+    public void setPosition(int slot, Vector3f position) {
+        posX[slot] = position.x;
+        posY[slot] = position.y;
+        posZ[slot] = position.z;
+    }
+
+    public void getVelocity(int slot, Vector3f out) {
+        out.set(velX[slot], velY[slot], velZ[slot]);
+    }
+
+    /**
+     * @return true if the position differs from the position that was written to the LocationComponent
+     */
+    public boolean isPositionDirty(int slot, Vector3f position) {
+        return writtenX[slot] != position.x || writtenY[slot] != position.y || writtenZ[slot] != position.z;
+    }
+
+    public void setPositionWritten(int slot, Vector3f position) {
+        writtenX[slot] = position.x;
+        writtenY[slot] = position.y;
+        writtenZ[slot] = position.z;
+    }
+
+    /**
+     * @return true if the velocity changed since the rotation has been written to the LocationComponent
+     */
+    public boolean isRotationDirty(int slot) {
+        return rotatedX[slot] != velX[slot] || rotatedY[slot] != velY[slot] || rotatedZ[slot] != velZ[slot];
+    }
+
+    public void setRotationWritten(int slot) {
+        rotatedX[slot] = velX[slot];
+        rotatedY[slot] = velY[slot];
+        rotatedZ[slot] = velZ[slot];
+    }
+
+    public void clear() {
+        Arrays.fill(entities, 0, size, null);
+        Arrays.fill(path, 0, size, null);
+        slots.clear();
+        size = 0;
+    }
+
+    private void move(int from, int to) {
+        entities[to] = entities[from];
+        posX[to] = posX[from];
+        posY[to] = posY[from];
+        posZ[to] = posZ[from];
+        prevX[to] = prevX[from];
+        prevY[to] = prevY[from];
+        prevZ[to] = prevZ[from];
+        writtenX[to] = writtenX[from];
+        writtenY[to] = writtenY[from];
+        writtenZ[to] = writtenZ[from];
+        rotatedX[to] = rotatedX[from];
+        rotatedY[to] = rotatedY[from];
+        rotatedZ[to] = rotatedZ[from];
+        velX[to] = velX[from];
+        velY[to] = velY[from];
+        velZ[to] = velZ[from];
+        stepLength[to] = stepLength[from];
+        pendingTime[to] = pendingTime[from];
+        tier[to] = tier[from];
+        phase[to] = phase[from];
+        path[to] = path[from];
+        pathDistance[to] = pathDistance[from];
+        pathSpeed[to] = pathSpeed[from];
+        originX[to] = originX[from];
+        originY[to] = originY[from];
+        originZ[to] = originZ[from];
+        originRotX[to] = originRotX[from];
+        originRotY[to] = originRotY[from];
+        originRotZ[to] = originRotZ[from];
+        originRotW[to] = originRotW[from];
+        flags[to] = flags[from];
+        triggerFilter[to] = triggerFilter[from];
+        collisionFilter[to] = collisionFilter[from];
+        radius[to] = radius[from];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= entities.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, entities.length * 2);
+        entities = Arrays.copyOf(entities, newCapacity);
+        posX = Arrays.copyOf(posX, newCapacity);
+        posY = Arrays.copyOf(posY, newCapacity);
+        posZ = Arrays.copyOf(posZ, newCapacity);
+        prevX = Arrays.copyOf(prevX, newCapacity);
+        prevY = Arrays.copyOf(prevY, newCapacity);
+        prevZ = Arrays.copyOf(prevZ, newCapacity);
+        writtenX = Arrays.copyOf(writtenX, newCapacity);
+        writtenY = Arrays.copyOf(writtenY, newCapacity);
+        writtenZ = Arrays.copyOf(writtenZ, newCapacity);
+        rotatedX = Arrays.copyOf(rotatedX, newCapacity);
+        rotatedY = Arrays.copyOf(rotatedY, newCapacity);
+        rotatedZ = Arrays.copyOf(rotatedZ, newCapacity);
+        velX = Arrays.copyOf(velX, newCapacity);
+        velY = Arrays.copyOf(velY, newCapacity);
+        velZ = Arrays.copyOf(velZ, newCapacity);
+        stepLength = Arrays.copyOf(stepLength, newCapacity);
+        pendingTime = Arrays.copyOf(pendingTime, newCapacity);
+        tier = Arrays.copyOf(tier, newCapacity);
+        phase = Arrays.copyOf(phase, newCapacity);
+        path = Arrays.copyOf(path, newCapacity);
+        pathDistance = Arrays.copyOf(pathDistance, newCapacity);
+        pathSpeed = Arrays.copyOf(pathSpeed, newCapacity);
+        originX = Arrays.copyOf(originX, newCapacity);
+        originY = Arrays.copyOf(originY, newCapacity);
+        originZ = Arrays.copyOf(originZ, newCapacity);
+        originRotX = Arrays.copyOf(originRotX, newCapacity);
+        originRotY = Arrays.copyOf(originRotY, newCapacity);
+        originRotZ = Arrays.copyOf(originRotZ, newCapacity);
+        originRotW = Arrays.copyOf(originRotW, newCapacity);
+        flags = Arrays.copyOf(flags, newCapacity);
+        triggerFilter = Arrays.copyOf(triggerFilter, newCapacity);
+        collisionFilter = Arrays.copyOf(collisionFilter, newCapacity);
+        radius = Arrays.copyOf(radius, newCapacity);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.math.Vector3fUtil;
+import org.terasology.physics.HitResult;
+import org.terasology.physics.StandardCollisionGroup;
+import org.terasology.physics.character.CharacterMovementComponent;
+import org.terasology.physics.components.RigidBodyComponent;
+import org.terasology.physics.engine.PhysicsEngine;
+
+import javax.vecmath.Vector3f;
+import java.util.Arrays;
+
+/**
+ * Collects the movement segments of all projectiles of one tick and traces them as one batch.
+ * Every segment is traced once with the union of its trigger and collision filter. The hit is
+ * assigned to the filters by the collision group of the hit object, a second trace is only needed
+ * if the nearest hit does not block the rigid body of a kinematic projectile.
+ * The results are written into flat arrays indexed like the queries.
+ */
+public class ProjectileSweep {
+
+    public static final byte HIT_TRIGGER = 1;
+    public static final byte HIT_COLLISION = 1 << 1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final short WORLD = StandardCollisionGroup.WORLD.getFlag();
+
+    int size;
+    //queries
+    int[] slot = new int[INITIAL_CAPACITY];
+    float[] originX = new float[INITIAL_CAPACITY];
+    float[] originY = new float[INITIAL_CAPACITY];
+    float[] originZ = new float[INITIAL_CAPACITY];
+    float[] directionX = new float[INITIAL_CAPACITY];
+    float[] directionY = new float[INITIAL_CAPACITY];
+    float[] directionZ = new float[INITIAL_CAPACITY];
+    float[] length = new float[INITIAL_CAPACITY];
+    float[] radius = new float[INITIAL_CAPACITY];
+    short[] triggerFilter = new short[INITIAL_CAPACITY];
+    short[] collisionFilter = new short[INITIAL_CAPACITY];
+    //results
+    byte[] hits = new byte[INITIAL_CAPACITY];
+    float[] triggerDistance = new float[INITIAL_CAPACITY];
+    float[] collisionDistance = new float[INITIAL_CAPACITY];
+    HitResult[] triggerHit = new HitResult[INITIAL_CAPACITY];
+
+    private Vector3f origin = new Vector3f();
+    private Vector3f direction = new Vector3f();
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(triggerHit, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Adds the segment of a projectile to the batch.
+     *
+     * @param collisionFilter filter of the rigid body of a kinematic projectile or 0 if the projectile isn't blocked
+     * @return the index of the query
+     */
+    public int add(int projectileSlot, Vector3f from, Vector3f velocity, float distance, float boundingRadius,
+                   short triggerGroups, short collisionGroups) {
+        ensureCapacity(size + 1);
+        int query = size++;
+        slot[query] = projectileSlot;
+        originX[query] = from.x;
+        originY[query] = from.y;
+        originZ[query] = from.z;
+        directionX[query] = velocity.x;
+        directionY[query] = velocity.y;
+        directionZ[query] = velocity.z;
+        length[query] = distance;
+        radius[query] = boundingRadius;
+        triggerFilter[query] = triggerGroups;
+        collisionFilter[query] = collisionGroups;
+        return query;
+    }
+
+    /**
+     * Traces all queued segments. The trace distance of every segment is extended by the bounding radius of the
+     * projectile, the resulting distances are the distances the projectile can move until it touches the hit.
+     */
+    public void run(PhysicsEngine physics) {
+        for (int query = 0; query < size; query++) {
+            hits[query] = 0;
+            triggerDistance[query] = 0;
+            collisionDistance[query] = 0;
+            triggerHit[query] = null;
+            origin.set(originX[query], originY[query], originZ[query]);
+            direction.set(directionX[query], directionY[query], directionZ[query]);
+            float distance = length[query] + radius[query];
+            short union = (short) (triggerFilter[query] | collisionFilter[query]);
+            HitResult hitResult = physics.rayTrace(origin, direction, distance, union);
+            if (!hitResult.isHit()) {
+                continue;
+            }
+            float hitDistance = (float) Vector3fUtil.calcdist(origin, hitResult.getHitPoint()) - radius[query];
+            short group = groupOf(hitResult);
+            boolean unknownGroup = group == 0;
+            if (unknownGroup) {//answer both filters separately
+                traceSeparately(physics, query, distance);
+                continue;
+            }
+            if ((group & triggerFilter[query]) != 0) {
+                hits[query] |= HIT_TRIGGER;
+                triggerDistance[query] = hitDistance;
+                triggerHit[query] = hitResult;
+                collisionDistance[query] = hitDistance;
+            }
+            if ((group & collisionFilter[query]) != 0) {
+                hits[query] |= HIT_COLLISION;
+                collisionDistance[query] = hitDistance;
+            } else if (collisionFilter[query] != 0) {//the nearest hit does not block the projectile, look behind it
+                HitResult hitResultCollision = physics.rayTrace(origin, direction, distance, collisionFilter[query]);
+                if (hitResultCollision.isHit()) {
+                    hits[query] |= HIT_COLLISION;
+                    collisionDistance[query] = (float) Vector3fUtil.calcdist(origin, hitResultCollision.getHitPoint()) - radius[query];
+                }
+            }
+        }
+    }
+
+    public boolean isHit(int query, byte hit) {
+        return (hits[query] & hit) != 0;
+    }
+
+    private void traceSeparately(PhysicsEngine physics, int query, float distance) {
+        HitResult hitResult = physics.rayTrace(origin, direction, distance, triggerFilter[query]);
+        if (hitResult.isHit()) {
+            hits[query] |= HIT_TRIGGER;
+            triggerDistance[query] = (float) Vector3fUtil.calcdist(origin, hitResult.getHitPoint()) - radius[query];
+            triggerHit[query] = hitResult;
+        }
+        collisionDistance[query] = triggerDistance[query];
+        if (collisionFilter[query] != 0) {
+            HitResult hitResultCollision = physics.rayTrace(origin, direction, distance, collisionFilter[query]);
+            if (hitResultCollision.isHit()) {
+                hits[query] |= HIT_COLLISION;
+                collisionDistance[query] = (float) Vector3fUtil.calcdist(origin, hitResultCollision.getHitPoint()) - radius[query];
+            }
+        }
+    }
+
+    /**
+     * @return the collision group flag of the hit object or 0 if it can't be determined
+     */
+    private short groupOf(HitResult hitResult) {
+        if (hitResult.isWorldHit()) {
+            return WORLD;
+        }
+        EntityRef entity = hitResult.getEntity();
+        RigidBodyComponent rigidBody = entity.getComponent(RigidBodyComponent.class);
+        if (rigidBody != null && rigidBody.collisionGroup != null) {
+            return rigidBody.collisionGroup.getFlag();
+        }
+        CharacterMovementComponent movement = entity.getComponent(CharacterMovementComponent.class);
+        if (movement != null && movement.collisionGroup != null) {
+            return movement.collisionGroup.getFlag();
+        }
+        return 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= slot.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, slot.length * 2);
+        slot = Arrays.copyOf(slot, newCapacity);
+        originX = Arrays.copyOf(originX, newCapacity);
+        originY = Arrays.copyOf(originY, newCapacity);
+        originZ = Arrays.copyOf(originZ, newCapacity);
+        directionX = Arrays.copyOf(directionX, newCapacity);
+        directionY = Arrays.copyOf(directionY, newCapacity);
+        directionZ = Arrays.copyOf(directionZ, newCapacity);
+        length = Arrays.copyOf(length, newCapacity);
+        radius = Arrays.copyOf(radius, newCapacity);
+        triggerFilter = Arrays.copyOf(triggerFilter, newCapacity);
+        collisionFilter = Arrays.copyOf(collisionFilter, newCapacity);
+        hits = Arrays.copyOf(hits, newCapacity);
+        triggerDistance = Arrays.copyOf(triggerDistance, newCapacity);
+        collisionDistance = Arrays.copyOf(collisionDistance, newCapacity);
+        triggerHit = Arrays.copyOf(triggerHit, newCapacity);
+    }
+}
@@ -20,42 +20,42 @@ package org.terasology.combat.systems;
 import com.bulletphysics.collision.dispatch.PairCachingGhostObject;
 import com.bulletphysics.dynamics.RigidBody;
 import com.bulletphysics.linearmath.Transform;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import org.terasology.combat.components.ProjectileComponent;
+import org.terasology.combat.components.ProjectilePathComponent;
 import org.terasology.entitySystem.entity.EntityManager;
 import org.terasology.entitySystem.entity.EntityRef;
 import org.terasology.entitySystem.entity.lifecycleEvents.BeforeRemoveComponent;
 import org.terasology.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
 import org.terasology.entitySystem.event.EventPriority;
 import org.terasology.entitySystem.event.ReceiveEvent;
+import org.terasology.entitySystem.prefab.Prefab;
 import org.terasology.entitySystem.systems.BaseComponentSystem;
 import org.terasology.entitySystem.systems.RegisterSystem;
 import org.terasology.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.logic.location.LocationComponent;
 import org.terasology.math.Vector3fUtil;
+import org.terasology.network.ClientComponent;
 import org.terasology.physics.HitResult;
 import org.terasology.physics.components.RigidBodyComponent;
 import org.terasology.physics.components.TriggerComponent;
 import org.terasology.physics.engine.PhysicsSystem;
 import org.terasology.physics.events.CollideEvent;
+import org.terasology.registry.CoreRegistry;
 import org.terasology.registry.In;
+import org.terasology.world.OnChangedBlock;
 import org.terasology.world.WorldProvider;
-import org.terasology.world.block.Block;
+import org.terasology.world.block.BlockComponent;
 
 import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
+import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.LinkedList;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * TODO handle possible lags/ interpolation ???
  * TODO angular velocity
- * TODO manually defined translations and rotations for the projectiles
- * TOD= Curve/ Function based translation/rotation of projectiles (Parametric equations/Brezier Curves and other curevs and so on)
+ * TODO manually defined rotations for the projectiles
+ * TODO homing projectiles, paths are only evaluated in the space of the launch
  */
 @RegisterSystem
 public class ProjectileSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
@@ -67,15 +67,67 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
     @In
     EntityManager entityManager;
 
+    private static final float FIXED_STEP = 1f / 60f;
+    private static final int MAX_SUB_STEPS = 4;
+    private static final float MAX_CATCH_UP = 0.25f;
+    //below this number of projectiles the integration runs on the game thread
+    private static final int PARALLEL_THRESHOLD = 2 * ProjectileIntegrator.CHUNK_SIZE;
+    private static final int QUEUE_CAPACITY = 256;
+
     private volatile float delta = 0;
-    private Deque<EntityRef> remove = new LinkedList<EntityRef>();
-    private Deque<EntityRef> add = new LinkedList<EntityRef>();
-    private Deque<EntityRef> projectiles = new LinkedList<EntityRef>();
-    private ConcurrentMap<EntityRef, CollideEvent> collisions = Maps.newConcurrentMap();
+    private Deque<EntityRef> remove = new ArrayDeque<EntityRef>(QUEUE_CAPACITY);
+    private Deque<EntityRef> add = new ArrayDeque<EntityRef>(QUEUE_CAPACITY);
+    private ProjectileStore projectiles = new ProjectileStore();
+    private CollisionQueue collisions = new CollisionQueue(QUEUE_CAPACITY);
+    private ProjectileSweep sweep = new ProjectileSweep();
+    private ForkJoinPool integrationPool;
+    private ProjectileLod lod = new ProjectileLod();
+    private BlockCollisionCache blockCache;
+    //registered by the DamageSystem, the arc length tables of the paths of the prefabs belong to their archetypes
+    CombatArchetypeCache archetypes;
+    private int savesAvoided;
+    private int lastSavesAvoided;
+
+    /**
+     * Gravity that is applied to projectiles that are effected by gravity, shared with the BallisticSolver
+     */
+    public static final float GRAVITY = 9.81f;
 
     Vector3f forward = new Vector3f(0, 0, 1);
-    Vector3f gravity = new Vector3f(0, -9.81f, 0);
+    Vector3f gravity = new Vector3f(0, -GRAVITY, 0);
+
+    //scratch objects for the movement of the projectiles, the movement runs on the game thread only
+    private Vector3f position = new Vector3f();
+    private Vector3f translation = new Vector3f();
+    private Vector3f direction = new Vector3f();
+    private Vector3f center = new Vector3f();
+    private float[] radius = new float[1];
+    private Quat4f rotation = new Quat4f();
+
+
+    @Override
+    public void initialise() {
+        CoreRegistry.put(BallisticSolver.class, new BallisticSolver(GRAVITY));
+        CoreRegistry.put(ProjectileSystem.class, this);
+        blockCache = new BlockCollisionCache(worldProvider);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (parallelism > 1) {
+            integrationPool = new ForkJoinPool(parallelism);
+        }
+    }
 
+    @Override
+    public void postBegin() {
+        archetypes = CoreRegistry.get(CombatArchetypeCache.class);
+    }
+
+    @Override
+    public void shutdown() {
+        if (integrationPool != null) {
+            integrationPool.shutdown();
+            integrationPool = null;
+        }
+    }
 
     @ReceiveEvent(components = {ProjectileComponent.class, LocationComponent.class}, priority = EventPriority.PRIORITY_NORMAL)
     public void removeProjectile(BeforeRemoveComponent event, EntityRef entity) {
@@ -172,8 +224,8 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
      */
     @ReceiveEvent(components = {ProjectileComponent.class, LocationComponent.class}, priority = EventPriority.PRIORITY_CRITICAL)
     public void onCollision(CollideEvent event, EntityRef projectile) {
-        if (checkCollision(event) && !collisions.containsKey(projectile)) {
-            collisions.put(projectile, event);
+        if (checkCollision(event)) {
+            collisions.offer(projectile, event);
         }
     }
 
@@ -182,105 +234,98 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
      * TODO check if rotation is possible without a collision. Needed ?
      * Velocity is currently fixed based on the definition within the ProjectileComponent of the Entity
      */
-    private void rotateToVelocity(float delta, EntityRef projectile) {
-        RigidBodyComponent rigidBodyComponent = projectile.getComponent(RigidBodyComponent.class);
-        if (rigidBodyComponent == null || rigidBodyComponent.kinematic) {
-            ProjectileComponent projectileComponent = projectile.getComponent(ProjectileComponent.class);
-            LocationComponent locationComponent = projectile.getComponent(LocationComponent.class);
-            Vector3f direction = new Vector3f(projectileComponent.initialVelocity);
+    private void rotateToVelocity(float delta, int slot, LocationComponent locationComponent) {
+        if (projectiles.hasFlag(slot, ProjectileStore.KINEMATIC)) {
+            projectiles.getVelocity(slot, direction);
             direction.scale(delta);
-            Quat4f rotation = locationComponent.getWorldRotation();
+            locationComponent.getWorldRotation(rotation);
             QuatUtil.lookAt(rotation, direction, forward);
 //    		QuaternionUtil.quatRotate(rotation, direction, forward);
             locationComponent.setWorldRotation(rotation);
-            projectile.saveComponent(locationComponent);
         } else {
-            rotateToVelocity(physicsSystem.getRigidBodyForEntity(projectile));
+            rotateToVelocity(physicsSystem.getRigidBodyForEntity(projectiles.getEntity(slot)));
         }
     }
 
 
     /**
      * Translates the Entity based on its velocity
+     * Queues the segment the projectile moves in this step, the segment has been calculated by the
+     * ProjectileIntegrator and is traced together with the segments of all other projectiles and applied by applySweep.
      * Velocity is currently fixed based on the definition within the ProjectileComponent of the Entity
      * TODO Support different Collision Volumes for Trigger and Rigid Body ?
      * TODO Support accelaration and decelaration for projectiles
      * TODO Support Translation of Dynamic rigged objects
      */
-    private void translateByVelocity(float delta, EntityRef projectile) {
-        ProjectileComponent projectileComponent = projectile.getComponent(ProjectileComponent.class);
-        LocationComponent locationComponent = projectile.getComponent(LocationComponent.class);
-        RigidBodyComponent rigidBodyComponent = projectile.getComponent(RigidBodyComponent.class);
-        //Gravity
-        if (projectileComponent.effectedByGravity) {
-            Vector3f gravityDelta = new Vector3f(gravity);
-            gravityDelta.scale(delta);
-            locationComponent.getWorldPosition().add(gravityDelta);
-            projectileComponent.initialVelocity.add(gravityDelta);
-        }
-        Vector3f translation = new Vector3f(projectileComponent.initialVelocity);
-        float momentum = translation.length();
-        double translationInFrame = 0;
-        if (momentum > 0) {
-            translationInFrame = momentum * delta;
-        }
-        Vector3f position = new Vector3f();
-        locationComponent.getWorldPosition(position);
-        if (translation.length() > 0) {//TODO Minimum Velocity for Translation ?
-            if (translationInFrame > 0) {
-                float radius[] = new float[1];
-                Vector3f center = new Vector3f();
-                //Check collision with Trigger
-                TriggerComponent trigger = projectile.getComponent(TriggerComponent.class);
-                short filterTrigger = physicsSystem.getPhysics().combineGroups(trigger.detectGroups);
-                double translationInFrameTrigger = 0;
-                PairCachingGhostObject ghost = physicsSystem.getTrigggerForEntity(projectile);
-                if (ghost != null) {
-                    ghost.getCollisionShape().getBoundingSphere(center, radius);
-                }
-                //if(translationInFrame > radius[0]){//TODO check optimization
-                HitResult hitResult = physicsSystem.getPhysics().rayTrace(position, translation, (float) translationInFrame + radius[0], filterTrigger);
-                if (hitResult.isHit()) {
-                    translationInFrameTrigger = Vector3fUtil.calcdist(position, hitResult.getHitPoint());
-                    translationInFrameTrigger -= radius[0];
-                }
-                double translationInFrameCollision = translationInFrameTrigger;
-                //Check Collision with RigidBody
-                if (rigidBodyComponent != null && rigidBodyComponent.kinematic) {
-                    short filterCollision = physicsSystem.getPhysics().combineGroups(rigidBodyComponent.collidesWith);
-                    HitResult hitResultCollision = physicsSystem.getPhysics().rayTrace(position, translation, (float) translationInFrame + radius[0], filterCollision);
-                    if (hitResultCollision.isHit()) {
-                        //Adjust Translation of Projectile
-                        translationInFrameCollision = Vector3fUtil.calcdist(position, hitResultCollision.getHitPoint());
-                        translationInFrameCollision -= radius[0];
-                        translationInFrame = translationInFrameCollision;
-                    }
-                }
-                //Needed because CollisionObject could tunnel through collision Volume that triggers the CollideEvent
-                if (hitResult.isHit() && translationInFrameTrigger <= translationInFrameCollision) {
-                    projectile.send(new CollideEvent(hitResult.getEntity(), hitResult.getHitPoint(), hitResult.getHitNormal()));
-                }
-                //	}
-                //Translate the Projectile
-                translation.normalize();
-                translation.scale((float) translationInFrame);
-                if (rigidBodyComponent == null || rigidBodyComponent.kinematic) {
-                    position.add(translation);
-                    locationComponent.setWorldPosition(position);
-                } else {//TODO translate dynamic objects
-                    RigidBody rigidBody = physicsSystem.getRigidBodyForEntity(projectile);
-                    if (rigidBody != null) {
-                        rigidBody.activate();
-                        rigidBody.applyCentralForce(translation);
-                        Vector3f velocity = new Vector3f();
-                        rigidBody.getLinearVelocity(velocity);
-                        System.out.println("velocity Rigid Body:" + velocity.length());
-                    }
-                }
+    private void translateByVelocity(int slot) {
+        float translationInFrame = projectiles.stepLength[slot];
+        if (translationInFrame > 0) {//TODO Minimum Velocity for Translation ?
+            float boundingRadius = Float.isNaN(projectiles.radius[slot]) ? 0 : projectiles.radius[slot];
+            projectiles.getPosition(slot, position);
+            projectiles.getVelocity(slot, translation);
+            sweep.add(slot, position, translation, translationInFrame, boundingRadius,
+                    projectiles.triggerFilter[slot], projectiles.collisionFilter[slot]);
+        }
+    }
+
+    /**
+     * Applies the traced segment of a projectile: sends the CollideEvent if the trigger volume was hit
+     * and moves the projectile up to the collision with its rigid body.
+     */
+    private void applySweep(int query) {
+        int slot = sweep.slot[query];
+        EntityRef projectile = projectiles.getEntity(slot);
+        float translationInFrame = sweep.length[query];
+        if (sweep.isHit(query, ProjectileSweep.HIT_COLLISION)) {
+            //Adjust Translation of Projectile
+            translationInFrame = sweep.collisionDistance[query];
+        }
+        //Needed because CollisionObject could tunnel through collision Volume that triggers the CollideEvent
+        if (sweep.isHit(query, ProjectileSweep.HIT_TRIGGER) && sweep.triggerDistance[query] <= sweep.collisionDistance[query]) {
+            HitResult hitResult = sweep.triggerHit[query];
+            projectile.send(new CollideEvent(hitResult.getEntity(), hitResult.getHitPoint(), hitResult.getHitNormal()));
+        }
+        //Translate the Projectile
+        projectiles.getVelocity(slot, translation);
+        translation.normalize();
+        translation.scale(translationInFrame);
+        if (projectiles.hasFlag(slot, ProjectileStore.KINEMATIC)) {
+            projectiles.posX[slot] += translation.x;
+            projectiles.posY[slot] += translation.y;
+            projectiles.posZ[slot] += translation.z;
+        } else {//TODO translate dynamic objects
+            RigidBody rigidBody = physicsSystem.getRigidBodyForEntity(projectile);
+            if (rigidBody != null) {
+                rigidBody.activate();
+                rigidBody.applyCentralForce(translation);
             }
         }
     }
 
+    /**
+     * Resolves the collision filters and the bounding radius of the trigger once per projectile.
+     * The radius stays unresolved until the physics engine has created the trigger.
+     */
+    private void resolveSweepParameters(int slot) {
+        if (!Float.isNaN(projectiles.radius[slot])) {
+            return;
+        }
+        EntityRef projectile = projectiles.getEntity(slot);
+        TriggerComponent trigger = projectile.getComponent(TriggerComponent.class);
+        if (trigger != null) {
+            projectiles.triggerFilter[slot] = physicsSystem.getPhysics().combineGroups(trigger.detectGroups);
+        }
+        if (projectiles.hasFlag(slot, ProjectileStore.KINEMATIC) && projectiles.hasFlag(slot, ProjectileStore.RIGID)) {
+            RigidBodyComponent rigidBodyComponent = projectile.getComponent(RigidBodyComponent.class);
+            projectiles.collisionFilter[slot] = physicsSystem.getPhysics().combineGroups(rigidBodyComponent.collidesWith);
+        }
+        PairCachingGhostObject ghost = physicsSystem.getTrigggerForEntity(projectile);
+        if (ghost != null) {
+            ghost.getCollisionShape().getBoundingSphere(center, radius);
+            projectiles.radius[slot] = radius[0];
+        }
+    }
+
     /**
      * helper method that checks if the result of the Raytracing actually hit an unpassable target
      */
@@ -288,8 +333,7 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
         boolean checkResult = false;
         if (result != null && result.isHit()) {
             if (result.isWorldHit()) {
-                Block block = worldProvider.getBlock(result.getBlockPosition());
-                if (!block.isPenetrable()) {
+                if (!blockCache.isPenetrable(result.getBlockPosition())) {
                     checkResult = true;
                 }
             } else {
@@ -302,19 +346,18 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
 
     /**
      * helper method that checks if collisionEvent actually hit an unpassable target
-     * TODO check for Blockcomponent of hit entityy first
      */
     private boolean checkCollision(CollideEvent event) {
         boolean checkResult = false;
         EntityRef other = event.getOtherEntity();
         if (other != null) {
-            if (other.hasComponent(org.terasology.world.block.BlockComponent.class)) {
-                LocationComponent location = other.getComponent(LocationComponent.class);
-                if (location != null) {
-                    Block block = worldProvider.getBlock(location.getWorldPosition());
-                    if (block == null || !block.isPenetrable() || !block.isLiquid()) {
-                        checkResult = true;
-                    }
+            BlockComponent blockComponent = other.getComponent(BlockComponent.class);
+            if (blockComponent != null) {
+                int flags = blockCache.getFlags(blockComponent.getPosition());
+                boolean penetrable = (flags & BlockCollisionCache.PENETRABLE) != 0;
+                boolean liquid = (flags & BlockCollisionCache.LIQUID) != 0;
+                if (!penetrable || !liquid) {
+                    checkResult = true;
                 }
             }
 
@@ -322,6 +365,16 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
         return checkResult;
     }
 
+    /**
+     * Invalidates the cached collision properties of a changed block
+     */
+    @ReceiveEvent(components = {BlockComponent.class})
+    public void onBlockChanged(OnChangedBlock event, EntityRef blockEntity) {
+        if (blockCache != null) {
+            blockCache.invalidate(event.getBlockPosition());
+        }
+    }
+
     /**
      * Rotates the Entity based on the current velocity of its Rigidbody
      * TODO check if translation is possible without a collision.
@@ -345,12 +398,24 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
         }
     }
 
+    /**
+     * The projectiles are moved in fixed steps. Time that exceeds the catch up budget after a lag is dropped
+     * and at most MAX_SUB_STEPS are simulated per frame, the rest stays in the accumulator for the next frames.
+     */
     @Override
     public void update(float delta) {
-        this.delta += delta; // handle possible lags
+        this.delta = Math.min(this.delta + delta, MAX_CATCH_UP);
+        savesAvoided = 0;
         processCollisions();
         processProjectiles();
-        processMovement();
+        int steps = 0;
+        while (this.delta >= FIXED_STEP && steps < MAX_SUB_STEPS) {
+            processMovement(FIXED_STEP);
+            this.delta -= FIXED_STEP;
+            steps++;
+        }
+        writeRenderPoses(Math.min(this.delta / FIXED_STEP, 1f));
+        lastSavesAvoided = savesAvoided;
     }
 
     /**
@@ -362,30 +427,91 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
     }
 
     /**
-     *
+     * Syncs the ProjectileStore with the projectiles that have been added or removed since the last frame,
+     * the velocity of a removed projectile is written back to its ProjectileComponent
      */
     private synchronized void processProjectiles() {
         while (!add.isEmpty()) {
-            projectiles.add(add.poll());
+            EntityRef projectile = add.poll();
+            int slot = projectiles.add(projectile);
+            if (slot >= 0) {
+                ProjectilePathComponent path = projectile.getComponent(ProjectilePathComponent.class);
+                if (path != null) {
+                    followPath(slot, projectile, path);
+                }
+            }
         }
         while (!remove.isEmpty()) {
-            projectiles.remove(remove.poll());
+            EntityRef projectile = remove.poll();
+            int slot = projectiles.indexOf(projectile);
+            if (slot >= 0 && projectile.exists()) {
+                //the integrated velocity stays with the projectile, e.g. for a stopped or retired dynamic projectile
+                ProjectileComponent projectileComponent = projectile.getComponent(ProjectileComponent.class);
+                if (projectileComponent != null) {
+                    projectiles.store(slot, projectileComponent);
+                    projectile.saveComponent(projectileComponent);
+                }
+            }
+            projectiles.remove(projectile);
         }
     }
 
     /**
      * Iterate through the collisions in the last frame and hanlde the collisions
+     * The velocity of the projectile is written back to the ProjectileComponent before the collision is handled
+     * and the store is reloaded afterwards, because the collision handling works on the components.
      */
     private synchronized void processCollisions() {
-        Set<EntityRef> remove = Sets.newHashSet();
-        for (Entry<EntityRef, CollideEvent> curCollisions : collisions.entrySet()) {
-            handleCollision(curCollisions.getValue(), curCollisions.getKey());
-            curCollisions.getKey().saveComponent(curCollisions.getKey().getComponent(ProjectileComponent.class));
-            remove.add(curCollisions.getKey());
+        for (int i = 0; i < collisions.size(); i++) {
+            EntityRef projectile = collisions.getProjectile(i);
+            ProjectileComponent projectileComponent = projectile.getComponent(ProjectileComponent.class);
+            int slot = projectiles.indexOf(projectile);
+            if (slot >= 0 && projectileComponent != null) {
+                projectiles.store(slot, projectileComponent);
+            }
+            handleCollision(collisions.getEvent(i), projectile);
+            if (projectileComponent != null) {
+                boolean changed = slot < 0 || projectiles.load(slot, projectileComponent, projectile.getComponent(RigidBodyComponent.class));
+                if (changed) {
+                    if (slot >= 0) {//the collision changed the movement, the projectile leaves its path
+                        projectiles.clearPath(slot);
+                    }
+                    projectile.saveComponent(projectileComponent);
+                } else {
+                    savesAvoided++;
+                }
+            }
         }
-        for (EntityRef curProjectile : remove) {
-            collisions.remove(curProjectile);
+        collisions.clear();
+    }
+
+    /**
+     * Current velocity of a projectile moved by the ProjectileSystem, the velocity of the ProjectileComponent is
+     * only updated on collisions.
+     *
+     * @return false if the entity isn't a kinematic projectile
+     */
+    public boolean getVelocity(EntityRef projectile, Vector3f out) {
+        int slot = projectiles.indexOf(projectile);
+        if (slot < 0 || !projectiles.hasFlag(slot, ProjectileStore.KINEMATIC)) {
+            return false;
         }
+        projectiles.getVelocity(slot, out);
+        return true;
+    }
+
+    /**
+     * @return the number of projectiles that are simulated, including retired ones that are removed in the next frame
+     */
+    public int getProjectileCount() {
+        return projectiles.size();
+    }
+
+    /**
+     * @return the largest number of projectile collisions that have been queued for one frame
+     */
+    public int getCollisionHighWaterMark() {
+        return collisions.getHighWaterMark();
     }
 
     /**
@@ -411,20 +537,21 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
 
     /**
      * switches the kinematic state of a rigged Projectile if its current velocity (momentum)
-     * drops below a certain value
+     * drops below a certain value. The projectile is retired once its removal has been queued, a dynamic
+     * projectile is switched to kinematic first and to dynamic again (and removed) in the next step.
+     *
+     * @return false if the projectile is not moved in this step
      */
-    public boolean handleKinematicState(float delta, EntityRef projectile) {
+    private boolean handleKinematicState(int slot) {
         boolean result = true;
-        if (projectile != null && projectile.exists()) {
-            ProjectileComponent projectileComponent = projectile.getComponent(ProjectileComponent.class);
-            if (projectileComponent != null) {
-                if (projectileComponent.effectedByGravity && !projectileComponent.piercing) {
-                    float momentum = projectileComponent.initialVelocity.length();
-                    if (momentum < 0.33f) {
-                        switchKinematicState(projectile);
-                        result = false;
-                    }
+        if (projectiles.hasFlag(slot, ProjectileStore.GRAVITY) && projectiles.hasFlag(slot, ProjectileStore.RIGID)
+                && !projectiles.hasFlag(slot, ProjectileStore.PIERCING)) {
+            float momentum = projectiles.speed(slot);
+            if (momentum < 0.33f) {
+                if (switchKinematicState(projectiles.getEntity(slot))) {//removes the projectile in the next frame
+                    projectiles.flags[slot] |= ProjectileStore.RETIRED;
                 }
+                result = false;
             }
         }
         return result;
@@ -433,8 +560,10 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
     /**
      * helper method to switch the kinmeatic state of a rigged body
      * TODO fix jitter for kinematic projectiles that are switched to dynamic state
+     *
+     * @return true if the removal of the projectile has been queued
      */
-    private void switchKinematicState(EntityRef projectile) {
+    private boolean switchKinematicState(EntityRef projectile) {
         if (projectile != null && projectile.exists()) {
             RigidBodyComponent rigidBodyComponent = projectile.getComponent(RigidBodyComponent.class);
             TriggerComponent trigger = projectile.getComponent(TriggerComponent.class);
@@ -449,26 +578,41 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
                 physicsSystem.recreate(projectile);
                 RigidBody rigidBody = physicsSystem.getRigidBodyForEntity(projectile);
                 rigidBody.setActivationState(rigidBody.WANTS_DEACTIVATION);
-            } else {//dynamic --> kinematic
+                return true;
+            } else if (rigidBodyComponent != null) {//dynamic --> kinematic
                 rigidBodyComponent.kinematic = true;
                 projectile.saveComponent(rigidBodyComponent);
             }
         }
+        return false;
     }
 
-    //TODO
-    private void rotateTo() {
-
-    }
-
-    //TODO
-    private void translateTo() {
-
-    }
-
-    //TODO
-    private void moveAlongPath() {
-
+    /**
+     * Lets the projectile follow its path from its current position, the path is rotated by the rotation of the
+     * projectile at launch. Projectiles with the path of their prefab share the arc length table of the archetype,
+     * the table of a changed path is built for the projectile.
+     * Dynamic projectiles are moved by the physics engine and ignore their path.
+     */
+    private void followPath(int slot, EntityRef projectile, ProjectilePathComponent pathComponent) {
+        if (!projectiles.hasFlag(slot, ProjectileStore.KINEMATIC)) {
+            return;
+        }
+        LocationComponent location = projectile.getComponent(LocationComponent.class);
+        Prefab prefab = projectile.getParentPrefab();
+        CombatArchetypeCache.Archetype archetype = null;
+        if (prefab != null && archetypes != null) {
+            archetype = archetypes.get(prefab.getName());
+        }
+        ProjectilePathTable table;
+        if (archetype != null && ProjectilePathTable.isSamePath(pathComponent, archetype.getPath())) {
+            table = archetype.getPathTable();
+        } else {
+            table = ProjectilePathTable.create(pathComponent.type, pathComponent.points);
+        }
+        if (table != null && location != null && pathComponent.speed > 0) {
+            location.getWorldRotation(rotation);
+            projectiles.setPath(slot, table, pathComponent.speed, rotation);
+        }
     }
 
     /**
@@ -487,17 +631,131 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
         }
     }
 
-    private void processMovement() {
-        float consume = delta;
-        for (EntityRef projectile : projectiles) {
-            if (handleKinematicState(consume, projectile)) {
-                translateByVelocity(consume, projectile);
-                rotateToVelocity(consume, projectile);
-                projectile.saveComponent(projectile.getComponent(ProjectileComponent.class));
-                projectile.saveComponent(projectile.getComponent(LocationComponent.class));
+    /**
+     * Moves all projectiles by one fixed step. The components are not touched, the render poses of the moved
+     * projectiles are written once per frame by writeRenderPoses.
+     * The MOVED flag marks the projectiles that have been moved in the last step.
+     * The step runs in three phases:
+     * 1. the projectiles that can move and are due by their level of detail are selected on the game thread
+     * 2. velocities and segments are integrated, in parallel if there are enough projectiles
+     * 3. the segments are traced and the results are applied on the game thread in slot order
+     */
+    private void processMovement(float step) {
+        sweep.clear();
+        if (lod.nextStep()) {
+            collectObservers();
+            lod.assign(projectiles);
+        }
+        for (int slot = 0; slot < projectiles.size(); slot++) {
+            EntityRef projectile = projectiles.getEntity(slot);
+            projectiles.flags[slot] &= ~ProjectileStore.MOVED;
+            if (projectiles.hasFlag(slot, ProjectileStore.RETIRED) || !projectile.exists()) {
+                continue;
+            }
+            if (handleKinematicState(slot)) {
+                projectiles.pendingTime[slot] += step;
+                if (!lod.isDue(projectiles, slot)) {
+                    continue;
+                }
+                if (!projectiles.hasFlag(slot, ProjectileStore.KINEMATIC)) {//moved by the physics engine
+                    LocationComponent location = projectile.getComponent(LocationComponent.class);
+                    location.getWorldPosition(position);
+                    projectiles.setPosition(slot, position);
+                }
+                resolveSweepParameters(slot);
+                projectiles.flags[slot] |= ProjectileStore.MOVED;
+            }
+        }
+        if (integrationPool != null && projectiles.size() >= PARALLEL_THRESHOLD) {
+            integrationPool.invoke(new ProjectileIntegrator(projectiles, 0, projectiles.size(), gravity.x, gravity.y, gravity.z));
+        } else {
+            ProjectileIntegrator.integrate(projectiles, 0, projectiles.size(), gravity.x, gravity.y, gravity.z);
+        }
+        for (int slot = 0; slot < projectiles.size(); slot++) {
+            if (projectiles.hasFlag(slot, ProjectileStore.MOVED)) {
+                translateByVelocity(slot);
+            }
+        }
+        sweep.run(physicsSystem.getPhysics());
+        for (int query = 0; query < sweep.size(); query++) {
+            applySweep(query);
+        }
+    }
+
+    /**
+     * Collects the positions of the characters of all clients for the level of detail of the projectiles
+     */
+    private void collectObservers() {
+        lod.clearObservers();
+        for (EntityRef client : entityManager.getEntitiesWith(ClientComponent.class)) {
+            ClientComponent clientComponent = client.getComponent(ClientComponent.class);
+            LocationComponent location = clientComponent.character.getComponent(LocationComponent.class);
+            if (location != null) {
+                location.getWorldPosition(position);
+                lod.addObserver(position.x, position.y, position.z);
             }
         }
-        delta -= consume;
+    }
+
+    /**
+     * The level of detail of the projectile movement, the tier distances can be configured and the
+     * number of projectiles per tier can be read from it.
+     */
+    public ProjectileLod getLod() {
+        return lod;
+    }
+
+    /**
+     * Writes the pose of every projectile that moved in the last fixed step into its LocationComponent.
+     * The position of near kinematic projectiles is interpolated between the last two fixed steps, so frames
+     * without a fixed step still move the projectile smoothly. Projectiles with a lower level of detail
+     * are placed at their latest position and are not rotated.
+     *
+     * @param interpolation the fraction of a fixed step that is left in the accumulator
+     */
+    private void writeRenderPoses(float interpolation) {
+        for (int slot = 0; slot < projectiles.size(); slot++) {
+            EntityRef projectile = projectiles.getEntity(slot);
+            if (!projectiles.hasFlag(slot, ProjectileStore.MOVED) || projectiles.hasFlag(slot, ProjectileStore.RETIRED)
+                    || !projectile.exists()) {
+                continue;
+            }
+            boolean near = projectiles.tier[slot] == ProjectileLod.NEAR;
+            if (!projectiles.hasFlag(slot, ProjectileStore.KINEMATIC)) {//the LocationComponent is updated by the physics engine
+                if (near) {
+                    rotateToVelocity(physicsSystem.getRigidBodyForEntity(projectile));
+                }
+                savesAvoided++;
+                continue;
+            }
+            float alpha = near ? interpolation : 1;
+            position.set(projectiles.prevX[slot] + (projectiles.posX[slot] - projectiles.prevX[slot]) * alpha,
+                    projectiles.prevY[slot] + (projectiles.posY[slot] - projectiles.prevY[slot]) * alpha,
+                    projectiles.prevZ[slot] + (projectiles.posZ[slot] - projectiles.prevZ[slot]) * alpha);
+            boolean rotate = near && projectiles.isRotationDirty(slot);
+            boolean move = projectiles.isPositionDirty(slot, position);
+            if (!rotate && !move) {
+                savesAvoided++;
+                continue;
+            }
+            LocationComponent location = projectile.getComponent(LocationComponent.class);
+            if (rotate) {
+                rotateToVelocity(FIXED_STEP, slot, location);
+                projectiles.setRotationWritten(slot);
+            }
+            if (move) {
+                location.setWorldPosition(position);
+                projectiles.setPositionWritten(slot, position);
+            }
+            projectile.saveComponent(location);
+        }
+    }
+
+    /**
+     * @return the number of component saves that have been skipped in the last frame because nothing changed
+     */
+    public int getSavesAvoided() {
+        return lastSavesAvoided;
     }
 
     @Deprecated
@@ -639,76 +897,7 @@ public class ProjectileSystem extends BaseComponentSystem implements UpdateSubsc
 //}
 
 
-/** Returns true if 'end' can be reached at the given 'speed', otherwise
- it returns false.
- bool CalculateTrajectory(const Vector3& start, const Vector3& end,
- ���������������������const float speed, const float gravity,
- ���������������������const bool bUseHighArc, Vector3& outTrajectory,
- ���������������������float& outAngle)
- {
- ����bool canHit = false;
- �
- ����// We use doubles instead of floats because we need a lot of
- ����// precision for some uses of the pow() function coming up.
- ����double term1 = 0.0f;
- ����double term2 = 0.0f;
- ����double root = 0.0f;
- �
- ����Vector3 diffVector = destination - origin;
- �
- ����// A horizontally-flattened difference vector.
- ����Vector3 horzDiff = Vector3(diffVector.x, 0.0f, diffVector.y);
- ���
- ����// We shrink our values by this factor to prevent too much
- ����// precision loss.
- ����const float factor = 100.0;
- �
- ����// Remember that Unitize returns length
- ����float x = horz.Unitize() / factor;
- ����float y = diffVector.y / factor;
- ����float v = speed / factor;
- ����float g = gravity / factor;
- �
- ����term1 = pow(v, 4) - (g * ((g * pow(x,2)) + (2 * y * pow(v,2))));
- �
- ����// If term1 is positive, then the 'end' point can be reached
- ����// at the given 'speed'.
- ����if ( term1 >= 0 )
- ����{
- ��������canHit = true;
- �
- ��������term2 = sqrt(term1);
- �
- ��������double divisor = (g * x);
- �
- ��������if ( divisor != 0.0f )
- ��������{
- ������������if ( bUseHighArc )
- ������������{
- ����������������root = ( pow(v,2) + term2 ) / divisor;
- ������������}
- ������������else
- ������������{
- ����������������root = ( pow(v,2) - term2 ) / divisor;
- ������������}
- �
- ������������root = atan(root);
- �
- ������������angleOut = static_cast<float>(root);
- �
- ������������Vector3 rightVector = horz.Cross(Vector3::UnitY);
- �
- ������������// Rotate the 'horz' vector around 'rightVector'
- ������������// by '-angleOut' degrees.
- ������������RotatePointAroundAxis(rightVector, -angleOut, horz);
- ��������}
- �
- ��������// Now apply the speed to the direction, giving a velocity
- ��������outTrajectory = horz * speed;
- ����}
- �
- ����return canHit;
- }
+/**
  // /**
  //     * <code>mult</code> multiplies this quaternion by a parameter vector. The
  //     * result is stored in the supplied vector
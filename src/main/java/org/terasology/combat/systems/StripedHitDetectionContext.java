@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.combat.components.HitDetectionComponent;
+import org.terasology.entitySystem.entity.EntityRef;
+
+/**
+ * Thread safe hit context that splits the hits into stripes by the id of the attacker. Every stripe is a
+ * HitDetectionContextImpl guarded by its own lock, so collision callbacks of different attackers can add hits
+ * concurrently. Clearing an entity locks the stripes one after another, because the entity can be the target
+ * of hits in any stripe.
+ * <p/>
+ * Threads that aren't allowed to read components should use addHit with the ids and a HitDetectionComponent.
+ */
+public class StripedHitDetectionContext implements HitDetectionContext {
+
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final HitDetectionContextImpl[] stripes;
+    private final int mask;
+
+    public StripedHitDetectionContext() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of stripes, rounded up to a power of two
+     */
+    public StripedHitDetectionContext(int stripes) {
+        int count = Integer.highestOneBit(Math.max(2, stripes) - 1) << 1;
+        this.stripes = new HitDetectionContextImpl[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new HitDetectionContextImpl();
+            this.stripes[i].setMaxEntries(Math.max(1, HitDetectionContextImpl.DEFAULT_MAX_ENTRIES / count));
+        }
+        this.mask = count - 1;
+    }
+
+    @Override
+    public boolean checkHit(EntityRef entity, EntityRef otherEntity) {
+        HitDetectionContextImpl stripe = stripe(entity.getId());
+        synchronized (stripe) {
+            return stripe.checkHit(entity, otherEntity);
+        }
+    }
+
+    @Override
+    public boolean addHit(EntityRef entity, EntityRef otherEntity) {
+        return addHit(entity.getId(), otherEntity.getId(), entity.getComponent(HitDetectionComponent.class));
+    }
+
+    @Override
+    public boolean addHit(int entity, int otherEntity, HitDetectionComponent hitDetection) {
+        HitDetectionContextImpl stripe = stripe(entity);
+        synchronized (stripe) {
+            return stripe.addHit(entity, otherEntity, hitDetection);
+        }
+    }
+
+    @Override
+    public boolean removeHit(EntityRef entity, EntityRef otherEntity) {
+        HitDetectionContextImpl stripe = stripe(entity.getId());
+        synchronized (stripe) {
+            return stripe.removeHit(entity, otherEntity);
+        }
+    }
+
+    @Override
+    public void clear(EntityRef entity) {
+        clear(entity.getId());
+    }
+
+    @Override
+    public void clear(int entity) {
+        for (HitDetectionContextImpl stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear(entity);
+            }
+        }
+    }
+
+    @Override
+    public void update(float delta) {
+        for (HitDetectionContextImpl stripe : stripes) {
+            synchronized (stripe) {
+                stripe.update(delta);
+            }
+        }
+    }
+
+    @Override
+    public int getCount(HitDetection trigger) {
+        int count = 0;
+        for (HitDetectionContextImpl stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.getCount(trigger);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Caps the number of registered hits, the cap is split evenly between the stripes
+     */
+    public void setMaxEntries(int maxEntries) {
+        for (HitDetectionContextImpl stripe : stripes) {
+            synchronized (stripe) {
+                stripe.setMaxEntries(Math.max(1, maxEntries / stripes.length));
+            }
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    private HitDetectionContextImpl stripe(int attacker) {
+        return stripes[attacker & mask];
+    }
+}
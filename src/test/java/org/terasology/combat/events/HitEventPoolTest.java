@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.events;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.Assume;
+import org.junit.Test;
+import org.terasology.entitySystem.entity.EntityRef;
+
+import javax.vecmath.Vector3f;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The steady state hit path (obtain, send, release) must not create events after the warm up.
+ */
+public class HitEventPoolTest {
+
+    private static final int WARM_UP = 4;
+    private static final int HITS = 100000;
+    //the measurement itself may allocate a little, a hit path that allocates allocates at least a HitEvent per hit
+    private static final long ALLOCATION_TOLERANCE = HITS / 10;
+
+    //the listener keeps what it reads, so the reads aren't optimized away
+    private float received;
+    private HitEvent retained;
+
+    /**
+     * Measures the bytes the thread allocates while the hits are dispatched after the warm up. The listener
+     * stands in for the handlers of the HitEvent, the entity system and its mocks aren't part of the measurement.
+     */
+    @Test
+    public void steadyStateHitsAllocateNothing() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        HitEventPool pool = new HitEventPool(WARM_UP);
+        EntityRef instigator = mock(EntityRef.class);
+        EntityRef other = mock(EntityRef.class);
+        Vector3f position = new Vector3f();
+        Vector3f normal = new Vector3f(0, 1, 0);
+        dispatchPooled(pool, instigator, other, position, normal);
+        dispatchUnpooled(instigator, other, position, normal);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        dispatchPooled(pool, instigator, other, position, normal);
+        long pooled = threads.getThreadAllocatedBytes(threadId) - before;
+
+        //the measurement has to see the allocation of an event per hit
+        before = threads.getThreadAllocatedBytes(threadId);
+        dispatchUnpooled(instigator, other, position, normal);
+        long unpooled = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("unpooled hits allocated " + unpooled + " bytes", unpooled > HITS * 16L);
+
+        assertTrue("pooled hits allocated " + pooled + " bytes", pooled < ALLOCATION_TOLERANCE);
+        assertEquals(WARM_UP, pool.getCreated());
+    }
+
+    @Test
+    public void steadyStateHitsCreateNoEvents() {
+        HitEventPool pool = new HitEventPool(WARM_UP);
+        EntityRef instigator = mock(EntityRef.class);
+        EntityRef other = mock(EntityRef.class);
+        Vector3f position = new Vector3f();
+        Vector3f normal = new Vector3f(0, 1, 0);
+        for (int i = 0; i < HITS; i++) {
+            position.set(i, 0, 0);
+            HitEvent event = pool.obtain(instigator, other, position, normal);
+            assertEquals(i, event.getHitPosition().x, 0);
+            pool.release(event);
+        }
+        assertEquals(WARM_UP, pool.getCreated());
+    }
+
+    private void dispatchPooled(HitEventPool pool, EntityRef instigator, EntityRef other, Vector3f position,
+                                Vector3f normal) {
+        for (int i = 0; i < HITS; i++) {
+            position.x = i;
+            HitEvent event = pool.obtain(instigator, other, position, normal);
+            try {
+                onHit(event);
+            } finally {
+                pool.release(event);
+            }
+        }
+    }
+
+    private void dispatchUnpooled(EntityRef instigator, EntityRef other, Vector3f position, Vector3f normal) {
+        for (int i = 0; i < HITS; i++) {
+            position.x = i;
+            HitEvent event = new HitEvent(instigator, other, position, normal);
+            onHit(event);
+            retained = event;
+        }
+    }
+
+    private void onHit(HitEvent event) {
+        if (event.getOther() != null) {
+            received += event.getHitPosition().x * event.getHitNormal().y;
+        }
+    }
+
+    @Test
+    public void nestedHitsCreateEventsOnlyOnce() {
+        HitEventPool pool = new HitEventPool(WARM_UP);
+        HitEvent[] nested = new HitEvent[WARM_UP + 2];
+        Vector3f zero = new Vector3f();
+        for (int round = 0; round < 10; round++) {
+            //hits sent while handling another hit hold more events than the warm up size
+            for (int i = 0; i < nested.length; i++) {
+                nested[i] = pool.obtain(EntityRef.NULL, EntityRef.NULL, zero, zero);
+            }
+            for (HitEvent event : nested) {
+                pool.release(event);
+            }
+        }
+        assertEquals(WARM_UP + 2, pool.getCreated());
+    }
+
+    @Test
+    public void eventOwnsItsVectors() {
+        HitEventPool pool = new HitEventPool(1);
+        EntityRef other = mock(EntityRef.class);
+        Vector3f position = new Vector3f(1, 2, 3);
+        HitEvent event = pool.obtain(EntityRef.NULL, other, position, position);
+        assertNotSame(position, event.getHitPosition());
+        position.set(0, 0, 0);
+        assertEquals(new Vector3f(1, 2, 3), event.getHitPosition());
+        assertSame(other, event.getOther());
+        pool.release(event);
+        assertSame(EntityRef.NULL, event.getOther());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.junit.Test;
+
+import javax.vecmath.Vector3f;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BallisticSolverTest {
+
+    private static final float GRAVITY = 9.81f;
+
+    private BallisticSolver solver = new BallisticSolver(GRAVITY);
+
+    @Test
+    public void nonPositiveSpeedCantReach() {
+        Vector3f velocity = new Vector3f(1, 1, 1);
+        assertFalse(solver.canReach(0, -1, 0, 0));
+        assertFalse(solver.canReach(1, 0, 0, -5));
+        assertFalse(solver.canReach(1, 0, 0, Float.NaN));
+        assertFalse(solver.solve(new Vector3f(), new Vector3f(0, -1, 0), 0, false, velocity));
+        assertEquals(new Vector3f(), velocity);
+    }
+
+    @Test
+    public void straightUpAndDown() {
+        Vector3f velocity = new Vector3f();
+        assertTrue(solver.solve(new Vector3f(), new Vector3f(0, 2, 0), 10, false, velocity));
+        assertEquals(new Vector3f(0, 10, 0), velocity);
+        assertTrue(solver.solve(new Vector3f(), new Vector3f(0, -2, 0), 10, true, velocity));
+        assertEquals(new Vector3f(0, -10, 0), velocity);
+    }
+
+    @Test
+    public void outOfReach() {
+        Vector3f velocity = new Vector3f();
+        float range = 10 * 10 / GRAVITY;
+        assertTrue(solver.canReach(range * 0.99f, 0, 0, 10));
+        assertFalse(solver.canReach(range * 1.01f, 0, 0, 10));
+        assertFalse(solver.solve(new Vector3f(), new Vector3f(range * 1.01f, 0, 0), 10, false, velocity));
+    }
+
+    @Test
+    public void trajectoryHitsTarget() {
+        Vector3f origin = new Vector3f(1, 2, 3);
+        Vector3f target = new Vector3f(21, 7, -12);
+        Vector3f velocity = new Vector3f();
+        for (boolean highArc : new boolean[]{false, true}) {
+            assertTrue(solver.solve(origin, target, 30, highArc, velocity));
+            assertEquals(30, velocity.length(), 1.0e-3f);
+            float dx = target.x - origin.x;
+            float dz = target.z - origin.z;
+            float t = (float) Math.sqrt(dx * dx + dz * dz) / (float) Math.sqrt(velocity.x * velocity.x + velocity.z * velocity.z);
+            assertEquals(target.x, origin.x + velocity.x * t, 1.0e-3f);
+            assertEquals(target.y, origin.y + velocity.y * t - GRAVITY * t * t / 2, 1.0e-2f);
+            assertEquals(target.z, origin.z + velocity.z * t, 1.0e-3f);
+        }
+    }
+
+    @Test
+    public void batchMatchesSingle() {
+        Random random = new Random(3);
+        int count = 200;
+        float[] origins = new float[count * 3];
+        float[] targets = new float[count * 3];
+        float[] speeds = new float[count];
+        for (int i = 0; i < count * 3; i++) {
+            origins[i] = random.nextFloat() * 20 - 10;
+            targets[i] = random.nextFloat() * 80 - 40;
+        }
+        for (int i = 0; i < count; i++) {
+            speeds[i] = random.nextFloat() * 30 - 2;
+        }
+        float[] velocities = new float[count * 3];
+        boolean[] reachable = new boolean[count];
+        boolean[] canReach = new boolean[count];
+        int solved = solver.solve(origins, targets, speeds, count, true, velocities, reachable);
+        assertEquals(solved, solver.canReach(origins, targets, speeds, count, canReach));
+        Vector3f velocity = new Vector3f();
+        for (int i = 0; i < count; i++) {
+            int index = i * 3;
+            Vector3f origin = new Vector3f(origins[index], origins[index + 1], origins[index + 2]);
+            Vector3f target = new Vector3f(targets[index], targets[index + 1], targets[index + 2]);
+            assertEquals(solver.solve(origin, target, speeds[i], true, velocity), reachable[i]);
+            assertEquals(reachable[i], canReach[i]);
+            assertEquals(velocity, new Vector3f(velocities[index], velocities[index + 1], velocities[index + 2]));
+        }
+    }
+}
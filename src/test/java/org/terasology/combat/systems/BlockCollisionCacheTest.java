@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terasology.math.Vector3i;
+import org.terasology.world.WorldProvider;
+import org.terasology.world.block.Block;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BlockCollisionCacheTest {
+
+    private WorldProvider worldProvider;
+    private BlockCollisionCache cache;
+    private Block air;
+    private Block stone;
+
+    @Before
+    public void setup() {
+        worldProvider = mock(WorldProvider.class);
+        air = block(0, true);
+        stone = block(1, false);
+        cache = new BlockCollisionCache(worldProvider);
+    }
+
+    @Test
+    public void cachesLoadedBlocks() {
+        Vector3i position = new Vector3i(1, 2, 3);
+        when(worldProvider.isBlockRelevant(position)).thenReturn(true);
+        when(worldProvider.getBlock(position)).thenReturn(stone);
+        assertFalse(cache.isPenetrable(position));
+        assertFalse(cache.isPenetrable(position));
+        verify(worldProvider, times(1)).getBlock(position);
+    }
+
+    @Test
+    public void unloadedChunkIsNotCached() {
+        Vector3i position = new Vector3i(1, 2, 3);
+        when(worldProvider.isBlockRelevant(position)).thenReturn(false);
+        when(worldProvider.getBlock(position)).thenReturn(air);
+        assertTrue(cache.isPenetrable(position));
+
+        //the chunk has been loaded
+        when(worldProvider.isBlockRelevant(position)).thenReturn(true);
+        when(worldProvider.getBlock(position)).thenReturn(stone);
+        assertFalse(cache.isPenetrable(position));
+    }
+
+    private static Block block(int id, boolean penetrable) {
+        Block block = mock(Block.class);
+        when(block.getId()).thenReturn((short) id);
+        when(block.isPenetrable()).thenReturn(penetrable);
+        return block;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terasology.combat.components.ProjectileComponent;
+import org.terasology.combat.components.ProjectilePathComponent;
+import org.terasology.entitySystem.entity.EntityManager;
+import org.terasology.entitySystem.prefab.Prefab;
+import org.terasology.entitySystem.prefab.PrefabManager;
+
+import javax.vecmath.Vector3f;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CombatArchetypeCacheTest {
+
+    private static final String ARROW = "combat:arrow";
+
+    private PrefabManager prefabManager;
+    private Prefab prefab;
+    private CombatArchetypeCache archetypes;
+
+    @Before
+    public void setup() {
+        prefabManager = mock(PrefabManager.class);
+        prefab = mock(Prefab.class);
+        when(prefab.getComponent(ProjectileComponent.class)).thenReturn(new ProjectileComponent());
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.getPrefabManager()).thenReturn(prefabManager);
+        archetypes = new CombatArchetypeCache(entityManager);
+    }
+
+    @Test
+    public void resolvedOnce() {
+        when(prefabManager.getPrefab(ARROW)).thenReturn(prefab);
+        CombatArchetypeCache.Archetype archetype = archetypes.get(ARROW);
+        assertSame(archetype, archetypes.get(ARROW));
+        verify(prefabManager, times(1)).getPrefab(ARROW);
+    }
+
+    @Test
+    public void reloadedPrefabIsResolvedAgain() {
+        when(prefabManager.getPrefab(ARROW)).thenReturn(prefab);
+        CombatArchetypeCache.Archetype archetype = archetypes.get(ARROW);
+        ProjectileComponent reloaded = new ProjectileComponent();
+        when(prefab.getComponent(ProjectileComponent.class)).thenReturn(reloaded);
+        assertFalse(archetype.isValid());
+        CombatArchetypeCache.Archetype current = archetypes.get(ARROW);
+        assertNotSame(archetype, current);
+        assertSame(reloaded, current.getProjectile());
+        assertTrue(current.isValid());
+    }
+
+    @Test
+    public void reloadedPathIsSampledAgain() {
+        when(prefab.getComponent(ProjectilePathComponent.class)).thenReturn(path(10));
+        when(prefabManager.getPrefab(ARROW)).thenReturn(prefab);
+        assertEquals(10, archetypes.get(ARROW).getPathTable().getLength(), 0.01f);
+        when(prefab.getComponent(ProjectilePathComponent.class)).thenReturn(path(20));
+        assertEquals(20, archetypes.get(ARROW).getPathTable().getLength(), 0.01f);
+    }
+
+    @Test
+    public void disposedPrefabIsResolvedAgain() {
+        when(prefabManager.getPrefab(ARROW)).thenReturn(prefab);
+        CombatArchetypeCache.Archetype archetype = archetypes.get(ARROW);
+        when(prefab.isDisposed()).thenReturn(true);
+        Prefab replacement = mock(Prefab.class);
+        when(prefabManager.getPrefab(ARROW)).thenReturn(replacement);
+        assertSame(replacement, archetypes.get(ARROW).getPrefab());
+        assertFalse(archetype.isValid());
+    }
+
+    @Test
+    public void missingPrefabIsRetried() {
+        assertNull(archetypes.get(ARROW));
+        when(prefabManager.getPrefab(ARROW)).thenReturn(prefab);
+        //within the retry interval the missing prefab isn't looked up
+        assertNull(archetypes.get(ARROW));
+        verify(prefabManager, times(1)).getPrefab(ARROW);
+
+        archetypes.setMissingRetryInterval(0);
+        assertNull(archetypes.get("combat:bolt"));
+        assertNull(archetypes.get("combat:bolt"));
+        verify(prefabManager, times(2)).getPrefab("combat:bolt");
+    }
+
+    @Test
+    public void prefabAddedLater() {
+        archetypes.setMissingRetryInterval(0);
+        assertNull(archetypes.get(ARROW));
+        when(prefabManager.getPrefab(ARROW)).thenReturn(prefab);
+        assertNotNull(archetypes.get(ARROW));
+    }
+
+    private static ProjectilePathComponent path(float length) {
+        ProjectilePathComponent path = new ProjectilePathComponent();
+        path.points.add(new Vector3f());
+        path.points.add(new Vector3f(0, 0, length));
+        return path;
+    }
+}
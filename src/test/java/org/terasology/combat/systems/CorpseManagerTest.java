@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.bulletphysics.dynamics.RigidBody;
+import com.google.common.collect.Maps;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.terasology.combat.components.CorpseComponent;
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.physics.components.RigidBodyComponent;
+import org.terasology.physics.engine.PhysicsSystem;
+
+import javax.vecmath.Vector3f;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unload and reload of corpses: the age and the frozen state have to survive in the CorpseComponent.
+ */
+public class CorpseManagerTest {
+
+    private DeadEntityFactory deadEntityFactory;
+    private PhysicsSystem physicsSystem;
+    private CorpseManager corpses;
+
+    @Before
+    public void setup() {
+        deadEntityFactory = mock(DeadEntityFactory.class);
+        when(deadEntityFactory.newRigidBody()).thenAnswer(new Answer<RigidBodyComponent>() {
+            @Override
+            public RigidBodyComponent answer(InvocationOnMock invocation) {
+                return new RigidBodyComponent();
+            }
+        });
+        //every body is at rest
+        physicsSystem = mock(PhysicsSystem.class);
+        when(physicsSystem.getRigidBodyForEntity(any(EntityRef.class))).thenReturn(mock(RigidBody.class));
+        corpses = new CorpseManager(deadEntityFactory);
+        corpses.setSettleTime(1);
+    }
+
+    @Test
+    public void reloadedCorpseDecaysWithRemainingLifespan() {
+        EntityRef corpse = spawn();
+        corpses.update(10, null);
+        assertTrue(corpses.deactivate(corpse));
+        assertEquals(0, corpses.getCorpseCount());
+        assertEquals(10, corpse.getComponent(CorpseComponent.class).age, 0.001f);
+
+        assertTrue(corpses.adopt(corpse));
+        assertFalse(corpses.adopt(corpse));
+        assertEquals(1, corpses.getCorpseCount());
+        corpses.update(corpses.getCorpseLifespan() - 10.5f, null);
+        assertEquals(1, corpses.getCorpseCount());
+        corpses.update(1, null);
+        assertEquals(0, corpses.getCorpseCount());
+        assertEquals(1, corpses.getDormantCount());
+    }
+
+    @Test
+    public void reloadedCorpsesCountTowardsBudget() {
+        corpses.setMaxCorpses(2);
+        EntityRef first = spawn();
+        corpses.update(1, null);
+        corpses.deactivate(first);
+        spawn();
+        spawn();
+        assertTrue(corpses.adopt(first));
+        assertEquals(2, corpses.getCorpseCount());
+        assertEquals(1, corpses.getEvictions());
+        //the adopted corpse is the oldest one, it is evicted itself
+        assertFalse(first.hasComponent(LocationComponent.class));
+    }
+
+    @Test
+    public void frozenCorpseCanBeWokenAfterReload() {
+        EntityRef corpse = spawn();
+        corpses.update(0.6f, physicsSystem);
+        corpses.update(0.6f, physicsSystem);
+        assertEquals(1, corpses.getFrozenCount());
+        assertNull(corpse.getComponent(RigidBodyComponent.class));
+        assertTrue(corpse.getComponent(CorpseComponent.class).frozen);
+
+        corpses.deactivate(corpse);
+        assertEquals(0, corpses.getFrozenCount());
+        //the chunk is loaded again, the frozen corpse has no rigid body
+        assertTrue(corpses.adopt(corpse));
+        assertEquals(1, corpses.getFrozenCount());
+        assertTrue(corpses.wake(corpse));
+        assertNotNull(corpse.getComponent(RigidBodyComponent.class));
+        assertFalse(corpse.getComponent(CorpseComponent.class).frozen);
+        assertEquals(0, corpses.getFrozenCount());
+    }
+
+    @Test
+    public void corpseSavedWithRigidBodyIsNotFrozen() {
+        EntityRef corpse = spawn();
+        corpse.getComponent(CorpseComponent.class).frozen = true;
+        corpses.deactivate(corpse);
+        assertTrue(corpses.adopt(corpse));
+        assertEquals(0, corpses.getFrozenCount());
+        assertFalse(corpse.getComponent(CorpseComponent.class).frozen);
+    }
+
+    private EntityRef spawn() {
+        EntityRef deadEntity = entity(new LocationComponent());
+        final EntityRef body = entity(new LocationComponent(), new RigidBodyComponent());
+        when(deadEntityFactory.newInstance(deadEntity)).thenReturn(body);
+        assertEquals(body, corpses.spawn(deadEntity));
+        return body;
+    }
+
+    /**
+     * @return an existing entity that stores its components in a map
+     */
+    private static EntityRef entity(Component... components) {
+        final Map<Class<?>, Component> store = Maps.newHashMap();
+        for (Component component : components) {
+            store.put(component.getClass(), component);
+        }
+        EntityRef entity = mock(EntityRef.class);
+        when(entity.exists()).thenReturn(true);
+        when(entity.getComponent(any(Class.class))).thenAnswer(new Answer<Component>() {
+            @Override
+            public Component answer(InvocationOnMock invocation) {
+                return store.get(invocation.getArguments()[0]);
+            }
+        });
+        when(entity.hasComponent(any(Class.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return store.containsKey(invocation.getArguments()[0]);
+            }
+        });
+        Answer<Component> put = new Answer<Component>() {
+            @Override
+            public Component answer(InvocationOnMock invocation) {
+                Component component = (Component) invocation.getArguments()[0];
+                store.put(component.getClass(), component);
+                return component;
+            }
+        };
+        when(entity.addComponent(any(Component.class))).thenAnswer(put);
+        doAnswer(put).when(entity).saveComponent(any(Component.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                store.remove(invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(entity).removeComponent(any(Class.class));
+        return entity;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.terasology.combat.components.HitZoneComponent;
+import org.terasology.entitySystem.entity.EntityManager;
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.entitySystem.prefab.Prefab;
+import org.terasology.entitySystem.prefab.PrefabManager;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.registry.CoreRegistry;
+
+import javax.vecmath.Vector3f;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DamageSystemTest {
+
+    private static final String CREATURE = "combat:creature";
+    private static final Vector3f HEAD = new Vector3f(0, 1.5f, 0);
+
+    private Prefab prefab;
+    private DamageSystem damageSystem;
+
+    @Before
+    public void setup() {
+        prefab = mock(Prefab.class);
+        when(prefab.getName()).thenReturn(CREATURE);
+        when(prefab.getComponent(HitZoneComponent.class)).thenReturn(zones(2));
+        PrefabManager prefabManager = mock(PrefabManager.class);
+        when(prefabManager.getPrefab(CREATURE)).thenReturn(prefab);
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.getPrefabManager()).thenReturn(prefabManager);
+        damageSystem = new DamageSystem();
+        damageSystem.entityManager = entityManager;
+        damageSystem.initialise();
+    }
+
+    @After
+    public void teardown() {
+        CoreRegistry.clear();
+    }
+
+    @Test
+    public void changedZonesOfTheFirstCreatureArentShared() {
+        EntityRef changed = creature(zones(5));
+        EntityRef creature = creature(zones(2));
+        assertEquals(5, damageSystem.getDamageMultiplier(changed, HEAD), 0);
+        assertEquals(2, damageSystem.getDamageMultiplier(creature, HEAD), 0);
+    }
+
+    @Test
+    public void zonesChangedAfterTheFirstHit() {
+        HitZoneComponent hitZones = zones(2);
+        EntityRef creature = creature(hitZones);
+        assertEquals(2, damageSystem.getDamageMultiplier(creature, HEAD), 0);
+        hitZones.multipliers.set(1, 3f);
+        assertEquals(3, damageSystem.getDamageMultiplier(creature, HEAD), 0);
+    }
+
+    @Test
+    public void reloadedPrefabZones() {
+        EntityRef creature = creature(zones(2));
+        assertEquals(2, damageSystem.getDamageMultiplier(creature, HEAD), 0);
+        when(prefab.getComponent(HitZoneComponent.class)).thenReturn(zones(4));
+        assertEquals(4, damageSystem.getDamageMultiplier(creature(zones(4)), HEAD), 0);
+        //a creature spawned before the reload keeps its zones
+        assertEquals(2, damageSystem.getDamageMultiplier(creature, HEAD), 0);
+    }
+
+    private EntityRef creature(HitZoneComponent hitZones) {
+        EntityRef entity = mock(EntityRef.class);
+        when(entity.getParentPrefab()).thenReturn(prefab);
+        when(entity.getComponent(HitZoneComponent.class)).thenReturn(hitZones);
+        when(entity.getComponent(LocationComponent.class)).thenReturn(new LocationComponent());
+        return entity;
+    }
+
+    private static HitZoneComponent zones(float headMultiplier) {
+        HitZoneComponent component = new HitZoneComponent();
+        component.names.add("legs");
+        component.min.add(new Vector3f(-0.5f, 0, -0.5f));
+        component.max.add(new Vector3f(0.5f, 1, 0.5f));
+        component.multipliers.add(0.5f);
+        component.names.add("head");
+        component.min.add(new Vector3f(-0.5f, 1, -0.5f));
+        component.max.add(new Vector3f(0.5f, 2, 0.5f));
+        component.multipliers.add(headMultiplier);
+        return component;
+    }
+}
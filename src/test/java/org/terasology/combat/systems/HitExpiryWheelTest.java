@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HitExpiryWheelTest {
+
+    private static final int SLOTS = 8;
+
+    private HitRegistry registry;
+    private HitExpiryWheel wheel;
+
+    @Before
+    public void setup() {
+        registry = new HitRegistry(16);
+        wheel = new HitExpiryWheel(registry, SLOTS);
+    }
+
+    @Test
+    public void expiresAtDeadline() {
+        long key = hit(1, 5);
+        assertEquals(0, wheel.advance(4));
+        assertTrue(registry.contains(key));
+        assertEquals(1, wheel.advance(5));
+        assertFalse(registry.contains(key));
+    }
+
+    @Test
+    public void deadlineBeyondOneRevolution() {
+        long near = hit(1, 3);
+        long far = hit(2, 3 + 2 * SLOTS);
+        assertEquals(1, wheel.advance(3));
+        assertTrue(registry.contains(far));
+        assertFalse(registry.contains(near));
+        //passes the bucket of the far hit once more without expiring it
+        assertEquals(0, wheel.advance(3 + SLOTS));
+        assertTrue(registry.contains(far));
+        assertEquals(0, wheel.advance(2 + 2 * SLOTS));
+        assertEquals(1, wheel.advance(3 + 2 * SLOTS));
+        assertFalse(registry.contains(far));
+    }
+
+    @Test
+    public void advanceSkippingRevolutions() {
+        long key = hit(1, 3 + SLOTS);
+        assertEquals(1, wheel.advance(100));
+        assertFalse(registry.contains(key));
+        assertEquals(100, wheel.getTick());
+    }
+
+    @Test
+    public void rescheduleLater() {
+        long key = hit(1, 2);
+        reschedule(key, 6);
+        assertEquals(0, wheel.advance(5));
+        assertTrue(registry.contains(key));
+        assertEquals(1, wheel.advance(6));
+        assertFalse(registry.contains(key));
+    }
+
+    @Test
+    public void rescheduleEarlier() {
+        long key = hit(1, 6);
+        reschedule(key, 2);
+        assertEquals(1, wheel.advance(2));
+        assertFalse(registry.contains(key));
+        //the stale entry doesn't count as expired
+        assertEquals(0, wheel.advance(20));
+    }
+
+    @Test
+    public void rescheduleIntoSameBucketOfLaterRound() {
+        long key = hit(1, 2);
+        reschedule(key, 2 + SLOTS);
+        assertEquals(0, wheel.advance(2 + SLOTS - 1));
+        assertTrue(registry.contains(key));
+        assertEquals(1, wheel.advance(2 + SLOTS));
+        assertFalse(registry.contains(key));
+    }
+
+    @Test
+    public void rescheduleToNever() {
+        long key = hit(1, 2);
+        registry.set(key, HitRegistry.NEVER);
+        assertEquals(0, wheel.advance(50));
+        assertTrue(registry.contains(key));
+    }
+
+    @Test
+    public void removedHitIsDropped() {
+        long key = hit(1, 2);
+        registry.remove(key);
+        assertEquals(0, wheel.advance(2));
+    }
+
+    @Test
+    public void passedDeadlineIsClamped() {
+        wheel.advance(10);
+        long past = hit(1, 4);
+        long now = hit(2, 10);
+        assertEquals(0, wheel.advance(10));
+        assertTrue(registry.contains(past));
+        assertEquals(2, wheel.advance(11));
+        assertFalse(registry.contains(past));
+        assertFalse(registry.contains(now));
+    }
+
+    @Test
+    public void evictInDeadlineOrder() {
+        long late = hit(1, 3 + SLOTS);
+        long second = hit(2, 5);
+        long first = hit(3, 2);
+        assertEquals(2, wheel.evict(2));
+        assertFalse(registry.contains(first));
+        assertFalse(registry.contains(second));
+        assertTrue(registry.contains(late));
+        assertEquals(1, wheel.evict(5));
+        assertEquals(0, registry.size());
+    }
+
+    private long hit(int attacker, long deadline) {
+        long key = HitRegistry.key(attacker, 100);
+        registry.put(key, 0, deadline);
+        wheel.schedule(key, deadline);
+        return key;
+    }
+
+    private void reschedule(long key, long deadline) {
+        registry.set(key, deadline);
+        wheel.schedule(key, deadline);
+    }
+}
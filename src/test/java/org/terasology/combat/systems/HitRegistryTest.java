@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HitRegistryTest {
+
+    private static final long MISSING = Long.MIN_VALUE;
+    //HitRegistry(4) has 8 slots and resizes above 4 hits
+    private static final int MASK = 7;
+
+    @Test
+    public void probeSequenceWrapsAround() {
+        HitRegistry registry = new HitRegistry(4);
+        long[] last = keysWithHome(1, MASK, 3);
+        for (int i = 0; i < last.length; i++) {
+            registry.put(last[i], 1, i, i + 100);
+        }
+        assertEquals(0, registry.get(last[0], MISSING));
+        assertEquals(102, registry.getAux(last[2], MISSING));
+
+        assertTrue(registry.remove(last[0]));
+        assertFalse(registry.contains(last[0]));
+        assertEquals(1, registry.get(last[1], MISSING));
+        assertEquals(101, registry.getAux(last[1], MISSING));
+        assertEquals(2, registry.get(last[2], MISSING));
+        assertEquals(1, registry.getMode(last[2]));
+        assertEquals(2, registry.count(1));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void putReplacesHitAndMode() {
+        HitRegistry registry = new HitRegistry(4);
+        long key = HitRegistry.key(1, 2);
+        registry.put(key, 1, 10);
+        registry.put(key, 2, 20, 5);
+        assertEquals(1, registry.size());
+        assertEquals(0, registry.count(1));
+        assertEquals(1, registry.count(2));
+        assertEquals(20, registry.get(key, MISSING));
+        assertEquals(5, registry.getAux(key, MISSING));
+        assertEquals(1, registry.countEntity(1));
+        assertEquals(1, registry.countEntity(2));
+    }
+
+    @Test
+    public void removeEntityAcrossBoundary() {
+        HitRegistry registry = new HitRegistry(4);
+        //all three hits share the home slot 7 and wrap into the slots 0 and 1, the hit of attacker 2 is shifted back
+        long[] attacker = keysWithHome(1, MASK, 2);
+        long other = keysWithHome(2, MASK, 1)[0];
+        registry.put(attacker[0], 0, 1);
+        registry.put(other, 0, 2);
+        registry.put(attacker[1], 0, 3);
+        assertEquals(2, registry.removeEntity(1));
+        assertEquals(1, registry.size());
+        assertEquals(2, registry.get(other, MISSING));
+        assertEquals(0, registry.countEntity(1));
+        assertEquals(1, registry.countEntity(2));
+    }
+
+    @Test
+    public void removeEntityAsTarget() {
+        HitRegistry registry = new HitRegistry(4);
+        registry.put(HitRegistry.key(1, 3), 0, 1);
+        registry.put(HitRegistry.key(2, 3), 0, 1);
+        registry.put(HitRegistry.key(2, 4), 0, 1);
+        registry.put(HitRegistry.key(3, 0), 0, 1);
+        assertEquals(3, registry.removeEntity(3));
+        assertEquals(1, registry.size());
+        assertTrue(registry.contains(HitRegistry.key(2, 4)));
+        assertEquals(0, registry.removeEntity(3));
+    }
+
+    @Test
+    public void removeAnyWhileShifting() {
+        HitRegistry registry = new HitRegistry(4);
+        long[] keys = keysWithHome(1, MASK, 4);
+        registry.put(keys[0], 3, 1);
+        registry.put(keys[1], 3, 1);
+        registry.put(keys[2], 4, 1);
+        registry.put(keys[3], 3, 1);
+        assertEquals(3, registry.removeAny(3, 10));
+        assertEquals(0, registry.count(3));
+        assertEquals(1, registry.size());
+        assertTrue(registry.contains(keys[2]));
+        assertEquals(1, registry.removeAny(4, 1));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void resizeKeepsHits() {
+        HitRegistry registry = new HitRegistry(4);
+        for (int i = 1; i <= 500; i++) {
+            registry.put(HitRegistry.key(i, i + 1), i % 3, i, -i);
+        }
+        assertEquals(500, registry.size());
+        for (int i = 1; i <= 500; i++) {
+            long key = HitRegistry.key(i, i + 1);
+            assertEquals(i, registry.get(key, MISSING));
+            assertEquals(-i, registry.getAux(key, MISSING));
+            assertEquals(i % 3, registry.getMode(key));
+        }
+        assertEquals(167, registry.count(1));
+        assertEquals(2, registry.countEntity(2));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(7);
+        HitRegistry registry = new HitRegistry(4);
+        Map<Long, long[]> reference = Maps.newHashMap();
+        for (int i = 0; i < 100000; i++) {
+            int attacker = 1 + random.nextInt(8);
+            int target = random.nextInt(8);
+            long key = HitRegistry.key(attacker, target);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                int mode = random.nextInt(3);
+                long value = random.nextInt(1000);
+                registry.put(key, mode, value);
+                reference.put(key, new long[]{mode, value});
+            } else if (operation < 8) {
+                assertEquals(reference.remove(key) != null, registry.remove(key));
+            } else if (operation < 9) {
+                int removed = 0;
+                Iterator<Long> iterator = reference.keySet().iterator();
+                while (iterator.hasNext()) {
+                    long hit = iterator.next();
+                    if (HitRegistry.attackerOf(hit) == attacker || HitRegistry.targetOf(hit) == attacker) {
+                        iterator.remove();
+                        removed++;
+                    }
+                }
+                assertEquals(removed, registry.removeEntity(attacker));
+            } else {
+                int mode = random.nextInt(3);
+                int count = 1 + random.nextInt(3);
+                int removed = registry.removeAny(mode, count);
+                int available = 0;
+                for (long[] hit : reference.values()) {
+                    available += hit[0] == mode ? 1 : 0;
+                }
+                assertEquals(Math.min(available, count), removed);
+                //the removed hits depend on the table order, sync the reference from the registry
+                Iterator<Map.Entry<Long, long[]>> iterator = reference.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    if (!registry.contains(iterator.next().getKey())) {
+                        iterator.remove();
+                    }
+                }
+            }
+            assertEquals(reference.size(), registry.size());
+        }
+        int[] modes = new int[3];
+        for (Map.Entry<Long, long[]> hit : reference.entrySet()) {
+            assertEquals(hit.getValue()[0], registry.getMode(hit.getKey()));
+            assertEquals(hit.getValue()[1], registry.get(hit.getKey(), MISSING));
+            modes[(int) hit.getValue()[0]]++;
+        }
+        for (int mode = 0; mode < modes.length; mode++) {
+            assertEquals(modes[mode], registry.count(mode));
+        }
+    }
+
+    /**
+     * @return count keys of the attacker whose home slot in a table with 8 slots is home
+     */
+    private static long[] keysWithHome(int attacker, int home, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (int target = 10; found < count; target++) {
+            long key = HitRegistry.key(attacker, target);
+            if ((LongIntHashMap.hash(key) & MASK) == home) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terasology.combat.components.HitZoneComponent;
+
+import javax.vecmath.Vector3f;
+
+import static org.junit.Assert.assertEquals;
+
+public class HitZoneTableTest {
+
+    private HitZoneTable table;
+
+    @Before
+    public void setup() {
+        HitZoneComponent component = new HitZoneComponent();
+        addZone(component, "legs", new Vector3f(-0.5f, 0, -0.5f), new Vector3f(0.5f, 1, 0.5f), 0.5f);
+        addZone(component, "head", new Vector3f(-0.5f, 1, -0.5f), new Vector3f(0.5f, 2, 0.5f), 2f);
+        table = HitZoneTable.create(component);
+    }
+
+    @Test
+    public void zoneInside() {
+        assertEquals("legs", table.getName(table.getZone(0, 0.5f, 0)));
+        assertEquals("head", table.getName(table.getZone(0, 1.5f, 0)));
+    }
+
+    @Test
+    public void hitOnMaxFace() {
+        assertEquals("head", table.getName(table.getZone(0, 2, 0)));
+        assertEquals("head", table.getName(table.getZone(0.5f, 1.5f, 0.5f)));
+        assertEquals("legs", table.getName(table.getZone(0.5f, 0.5f, 0.5f)));
+    }
+
+    @Test
+    public void hitOnMinFace() {
+        assertEquals("legs", table.getName(table.getZone(-0.5f, 0, -0.5f)));
+    }
+
+    @Test
+    public void hitOutside() {
+        assertEquals(HitZoneTable.NO_ZONE, table.getZone(0, 2.1f, 0));
+        assertEquals(HitZoneTable.NO_ZONE, table.getZone(0, -0.1f, 0));
+        assertEquals(1, table.getMultiplier(HitZoneTable.NO_ZONE), 0);
+    }
+
+    private static void addZone(HitZoneComponent component, String name, Vector3f min, Vector3f max, float multiplier) {
+        component.names.add(name);
+        component.min.add(min);
+        component.max.add(max);
+        component.multipliers.add(multiplier);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.terasology.combat.components.LaunchEntityComponent;
+import org.terasology.combat.components.ProjectileComponent;
+import org.terasology.combat.components.ProjectilePoolComponent;
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.entity.EntityBuilder;
+import org.terasology.entitySystem.entity.EntityManager;
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.entitySystem.metadata.ComponentLibrary;
+import org.terasology.entitySystem.prefab.Prefab;
+import org.terasology.entitySystem.prefab.PrefabManager;
+import org.terasology.logic.common.ActivateEvent;
+import org.terasology.logic.inventory.ItemComponent;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.registry.CoreRegistry;
+
+import javax.vecmath.Vector3f;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Counts the entity operations of a shot, a shot used to create a temporary entity, copy it and destroy the
+ * temporary one
+ */
+public class LaunchEntityActionTest {
+
+    private static final String ARROW = "combat:arrow";
+    private static final int SHOTS = 1000;
+
+    private EntityManager entityManager;
+    private PrefabManager prefabManager;
+    private Prefab prefab;
+    private LocationComponent prefabLocation;
+    private EntityBuilder builder;
+    private ProjectileComponent builtProjectile;
+    private EntityRef projectile;
+    private LaunchEntityAction launchEntityAction;
+
+    @Before
+    public void setup() {
+        entityManager = mock(EntityManager.class);
+        prefabManager = mock(PrefabManager.class);
+        prefab = mock(Prefab.class);
+        prefabLocation = new LocationComponent();
+        builder = mock(EntityBuilder.class);
+        builtProjectile = new ProjectileComponent();
+        projectile = mock(EntityRef.class);
+        ComponentLibrary componentLibrary = mock(ComponentLibrary.class);
+        when(componentLibrary.copy(any(Component.class))).thenAnswer(new Answer<Component>() {
+            @Override
+            public Component answer(InvocationOnMock invocation) throws Throwable {
+                return (Component) invocation.getArguments()[0].getClass().newInstance();
+            }
+        });
+        when(entityManager.getPrefabManager()).thenReturn(prefabManager);
+        when(entityManager.getComponentLibrary()).thenReturn(componentLibrary);
+        when(entityManager.newBuilder(prefab)).thenReturn(builder);
+        when(prefabManager.getPrefab(ARROW)).thenReturn(prefab);
+        when(prefab.getName()).thenReturn(ARROW);
+        when(prefab.getComponent(LocationComponent.class)).thenReturn(prefabLocation);
+        when(prefab.getComponent(ProjectileComponent.class)).thenReturn(new ProjectileComponent());
+        when(builder.getComponent(ProjectileComponent.class)).thenReturn(builtProjectile);
+        when(builder.build()).thenReturn(projectile);
+        when(projectile.exists()).thenReturn(true);
+
+        CoreRegistry.put(CombatArchetypeCache.class, new CombatArchetypeCache(entityManager));
+        launchEntityAction = new LaunchEntityAction();
+        launchEntityAction.entityManager = entityManager;
+    }
+
+    @After
+    public void teardown() {
+        CoreRegistry.clear();
+    }
+
+    @Test
+    public void shotBuildsOneEntity() {
+        when(prefabManager.listPrefabs(ProjectilePoolComponent.class)).thenReturn(Collections.<Prefab>emptyList());
+        launchEntityAction.postBegin();
+        EntityRef instigator = mock(EntityRef.class);
+        EntityRef launcher = launcher();
+        for (int i = 0; i < SHOTS; i++) {
+            launchEntityAction.onActivate(shot(instigator), launcher);
+        }
+        verify(entityManager, times(SHOTS)).newBuilder(prefab);
+        verify(builder, times(SHOTS)).build();
+        verify(entityManager, never()).create(any(Prefab.class), any(Vector3f.class));
+        verify(entityManager, never()).copy(any(EntityRef.class));
+        verify(projectile, never()).destroy();
+        assertSame(instigator, builtProjectile.owner);
+        assertEquals(new Vector3f(0, 0, 10), builtProjectile.initialVelocity);
+        //the per shot values went into the copies of the builder
+        assertEquals(new Vector3f(), prefabLocation.getLocalPosition());
+    }
+
+    @Test
+    public void pooledShotsBuildNoEntity() {
+        ProjectilePoolComponent poolComponent = new ProjectilePoolComponent();
+        poolComponent.size = 4;
+        when(prefab.getComponent(ProjectilePoolComponent.class)).thenReturn(poolComponent);
+        when(prefabManager.listPrefabs(ProjectilePoolComponent.class)).thenReturn(Lists.newArrayList(prefab));
+        launchEntityAction.postBegin();
+        //warmed before the first shot
+        verify(builder, times(4)).build();
+
+        EntityRef launcher = launcher();
+        for (int i = 0; i < 4; i++) {
+            launchEntityAction.onActivate(shot(mock(EntityRef.class)), launcher);
+        }
+        verify(builder, times(4)).build();
+        verify(entityManager, never()).create(any(Prefab.class), any(Vector3f.class));
+        verify(entityManager, never()).copy(any(EntityRef.class));
+    }
+
+    private EntityRef launcher() {
+        LaunchEntityComponent launchEntityComponent = new LaunchEntityComponent();
+        launchEntityComponent.entity = ARROW;
+        launchEntityComponent.useMouseLookForRotation = false;
+        launchEntityComponent.distancePerSecond = 10;
+        ItemComponent item = new ItemComponent();
+        item.chargeTime = 1;
+        item.maxChargeTime = 1;
+        EntityRef launcher = mock(EntityRef.class);
+        when(launcher.getComponent(LaunchEntityComponent.class)).thenReturn(launchEntityComponent);
+        when(launcher.getComponent(ItemComponent.class)).thenReturn(item);
+        return launcher;
+    }
+
+    private static ActivateEvent shot(EntityRef instigator) {
+        ActivateEvent event = mock(ActivateEvent.class);
+        when(event.getInstigator()).thenReturn(instigator);
+        when(event.getDirection()).thenReturn(new Vector3f(0, 0, 1));
+        return event;
+    }
+}
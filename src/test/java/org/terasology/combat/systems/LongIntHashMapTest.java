@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongIntHashMapTest {
+
+    private static final int MISSING = -1;
+    //LongIntHashMap(4) has 8 slots and resizes above 4 entries
+    private static final int MASK = 7;
+
+    @Test
+    public void probeSequenceWrapsAround() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        long[] last = keysWithHome(MASK, 3, 0);
+        long first = keysWithHome(0, 1, 0)[0];
+        //slots 7, 0, 1 and 2
+        for (int i = 0; i < last.length; i++) {
+            map.put(last[i], i, MISSING);
+        }
+        map.put(first, 10, MISSING);
+        for (int i = 0; i < last.length; i++) {
+            assertEquals(i, map.get(last[i], MISSING));
+        }
+        assertEquals(10, map.get(first, MISSING));
+
+        //the entries behind slot 7 are shifted back over the boundary
+        assertEquals(0, map.remove(last[0], MISSING));
+        assertEquals(MISSING, map.get(last[0], MISSING));
+        assertEquals(1, map.get(last[1], MISSING));
+        assertEquals(2, map.get(last[2], MISSING));
+        assertEquals(10, map.get(first, MISSING));
+
+        assertEquals(2, map.remove(last[2], MISSING));
+        assertEquals(1, map.get(last[1], MISSING));
+        assertEquals(10, map.get(first, MISSING));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void entryAtItsHomeIsNotShifted() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        long[] sixes = keysWithHome(6, 2, 0);
+        long zero = keysWithHome(0, 1, 0)[0];
+        //slots 6, 7 and 0, the entry in slot 0 is at its home
+        map.put(sixes[0], 1, MISSING);
+        map.put(sixes[1], 2, MISSING);
+        map.put(zero, 3, MISSING);
+        map.remove(sixes[0], MISSING);
+        assertEquals(2, map.get(sixes[1], MISSING));
+        assertEquals(3, map.get(zero, MISSING));
+        map.remove(sixes[1], MISSING);
+        assertEquals(3, map.get(zero, MISSING));
+        assertFalse(map.containsKey(sixes[1]));
+    }
+
+    @Test
+    public void resizeKeepsEntries() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 31L, i, MISSING);
+        }
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(i * 31L, MISSING));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            assertEquals(i, map.remove(i * 31L, MISSING));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 0 ? MISSING : i, map.get(i * 31L, MISSING));
+        }
+    }
+
+    @Test
+    public void addTreatsMissingAsZero() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(3, map.add(5, 3));
+        assertEquals(1, map.add(5, -2));
+        assertTrue(map.containsKey(5));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(42);
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> reference = Maps.newHashMap();
+        for (int i = 0; i < 200000; i++) {
+            //a small key range keeps the table full of collisions
+            long key = random.nextInt(64) - 32;
+            int value = random.nextInt(1000);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    Integer previous = reference.put(key, value);
+                    assertEquals(previous != null ? previous : MISSING, map.put(key, value, MISSING));
+                    break;
+                case 2:
+                    Integer removed = reference.remove(key);
+                    assertEquals(removed != null ? removed : MISSING, map.remove(key, MISSING));
+                    break;
+                default:
+                    Integer current = reference.get(key);
+                    reference.put(key, (current != null ? current : 0) + value);
+                    assertEquals((int) reference.get(key), map.add(key, value));
+                    break;
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        for (long key = -32; key < 32; key++) {
+            Integer expected = reference.get(key);
+            assertEquals(expected != null ? expected : MISSING, map.get(key, MISSING));
+        }
+    }
+
+    /**
+     * @return count keys whose home slot in a table with 8 slots is home, starting the search at from
+     */
+    static long[] keysWithHome(int home, int count, long from) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = from; found < count; key++) {
+            if ((LongIntHashMap.hash(key) & MASK) == home) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import com.bulletphysics.dynamics.RigidBody;
+import com.google.common.collect.Maps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.terasology.combat.components.ProjectileComponent;
+import org.terasology.combat.components.ProjectilePathComponent;
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.entity.EntityManager;
+import org.terasology.entitySystem.entity.EntityRef;
+import org.terasology.entitySystem.prefab.Prefab;
+import org.terasology.entitySystem.prefab.PrefabManager;
+import org.terasology.logic.location.LocationComponent;
+import org.terasology.physics.HitResult;
+import org.terasology.physics.components.RigidBodyComponent;
+import org.terasology.physics.components.TriggerComponent;
+import org.terasology.physics.engine.PhysicsEngine;
+import org.terasology.physics.engine.PhysicsSystem;
+import org.terasology.world.WorldProvider;
+
+import javax.vecmath.Vector3f;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyFloat;
+import static org.mockito.Matchers.anyShort;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProjectileSystemTest {
+
+    //a little more than one fixed step per frame
+    private static final float FRAME = 0.02f;
+
+    private PhysicsSystem physicsSystem;
+    private ProjectileSystem projectileSystem;
+
+    @Before
+    public void setup() {
+        physicsSystem = mock(PhysicsSystem.class);
+        when(physicsSystem.getRigidBodyForEntity(any(EntityRef.class))).thenReturn(mock(RigidBody.class));
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.getEntitiesWith(any(Class.class))).thenReturn(Collections.<EntityRef>emptyList());
+        projectileSystem = new ProjectileSystem();
+        projectileSystem.physicsSystem = physicsSystem;
+        projectileSystem.entityManager = entityManager;
+        projectileSystem.worldProvider = mock(WorldProvider.class);
+        projectileSystem.initialise();
+    }
+
+    @After
+    public void teardown() {
+        projectileSystem.shutdown();
+    }
+
+    /**
+     * The slowed projectile is switched to kinematic, to dynamic again in the next step and then removed
+     */
+    @Test
+    public void slowedDynamicProjectileLeavesStore() {
+        RigidBodyComponent rigidBody = new RigidBodyComponent();
+        EntityRef projectile = projectile(rigidBody, new Vector3f(0.1f, 0, 0));
+        projectileSystem.addProjectile(null, projectile);
+
+        projectileSystem.update(FRAME);
+        assertTrue(rigidBody.kinematic);
+        assertEquals(1, projectileSystem.getProjectileCount());
+        verify(physicsSystem, never()).recreate(projectile);
+
+        projectileSystem.update(FRAME);
+        assertFalse(rigidBody.kinematic);
+        verify(physicsSystem).recreate(projectile);
+
+        projectileSystem.update(FRAME);
+        assertEquals(0, projectileSystem.getProjectileCount());
+        assertFalse(projectile.getComponent(TriggerComponent.class).enabled);
+    }
+
+    @Test
+    public void slowedKinematicProjectileLeavesStore() {
+        RigidBodyComponent rigidBody = new RigidBodyComponent();
+        rigidBody.kinematic = true;
+        EntityRef projectile = projectile(rigidBody, new Vector3f(0.1f, 0, 0));
+        projectileSystem.addProjectile(null, projectile);
+
+        projectileSystem.update(FRAME);
+        assertFalse(rigidBody.kinematic);
+        projectileSystem.update(FRAME);
+        assertEquals(0, projectileSystem.getProjectileCount());
+    }
+
+    /**
+     * The first projectile of the prefab has a changed path, the projectiles with the path of the prefab must
+     * follow the path of the prefab
+     */
+    @Test
+    public void changedPathIsntShared() {
+        Prefab prefab = mock(Prefab.class);
+        when(prefab.getName()).thenReturn("combat:arrow");
+        when(prefab.getComponent(ProjectilePathComponent.class)).thenReturn(path(new Vector3f(0, 0, 10)));
+        PrefabManager prefabManager = mock(PrefabManager.class);
+        when(prefabManager.getPrefab("combat:arrow")).thenReturn(prefab);
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.getPrefabManager()).thenReturn(prefabManager);
+        projectileSystem.archetypes = new CombatArchetypeCache(entityManager);
+        PhysicsEngine physics = mock(PhysicsEngine.class);
+        when(physics.rayTrace(any(Vector3f.class), any(Vector3f.class), anyFloat(), anyShort()))
+                .thenReturn(mock(HitResult.class));
+        when(physicsSystem.getPhysics()).thenReturn(physics);
+        //without observers the projectiles are far, they are moved in every step anyway
+        projectileSystem.getLod().setFarInterval(1);
+
+        EntityRef changed = pathProjectile(prefab, path(new Vector3f(10, 0, 0)));
+        EntityRef projectile = pathProjectile(prefab, path(new Vector3f(0, 0, 10)));
+        projectileSystem.addProjectile(null, changed);
+        projectileSystem.addProjectile(null, projectile);
+        projectileSystem.update(FRAME);
+
+        Vector3f position = changed.getComponent(LocationComponent.class).getWorldPosition();
+        assertTrue(position.x > 0);
+        assertEquals(0, position.z, 0.0001f);
+        position = projectile.getComponent(LocationComponent.class).getWorldPosition();
+        assertEquals(0, position.x, 0.0001f);
+        assertTrue(position.z > 0);
+    }
+
+    private static EntityRef pathProjectile(Prefab prefab, ProjectilePathComponent path) {
+        RigidBodyComponent rigidBody = new RigidBodyComponent();
+        rigidBody.kinematic = true;
+        EntityRef projectile = entity(new ProjectileComponent(), new LocationComponent(), rigidBody,
+                new TriggerComponent(), path);
+        when(projectile.getParentPrefab()).thenReturn(prefab);
+        return projectile;
+    }
+
+    private static ProjectilePathComponent path(Vector3f end) {
+        ProjectilePathComponent path = new ProjectilePathComponent();
+        path.points.add(new Vector3f());
+        path.points.add(end);
+        return path;
+    }
+
+    private static EntityRef projectile(RigidBodyComponent rigidBody, Vector3f velocity) {
+        ProjectileComponent projectileComponent = new ProjectileComponent();
+        projectileComponent.effectedByGravity = true;
+        projectileComponent.initialVelocity.set(velocity);
+        return entity(projectileComponent, new LocationComponent(), rigidBody, new TriggerComponent());
+    }
+
+    /**
+     * @return an existing entity that stores its components in a map
+     */
+    private static EntityRef entity(Component... components) {
+        final Map<Class<?>, Component> store = Maps.newHashMap();
+        for (Component component : components) {
+            store.put(component.getClass(), component);
+        }
+        EntityRef entity = mock(EntityRef.class);
+        when(entity.exists()).thenReturn(true);
+        when(entity.getComponent(any(Class.class))).thenAnswer(new Answer<Component>() {
+            @Override
+            public Component answer(InvocationOnMock invocation) {
+                return store.get(invocation.getArguments()[0]);
+            }
+        });
+        when(entity.hasComponent(any(Class.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return store.containsKey(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Component component = (Component) invocation.getArguments()[0];
+                store.put(component.getClass(), component);
+                return null;
+            }
+        }).when(entity).saveComponent(any(Component.class));
+        return entity;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.combat.systems;
+
+import org.terasology.combat.components.HitDetectionComponent;
+import org.terasology.entitySystem.entity.EntityRef;
+
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Contention benchmark of the hit context: threads add hits of their own attackers concurrently, like the collision
+ * callbacks of the physics engine do, once into a single HitDetectionContextImpl behind one lock and once into a
+ * StripedHitDetectionContext with the default 16 stripes.
+ * Not a unit test, run the main method on a machine with several cores and without other load.
+ */
+public final class StripedHitDetectionContextBenchmark {
+
+    private static final int ATTACKERS = 1024;
+    private static final int TARGETS = 32;
+    private static final int HITS_PER_THREAD = 2000000;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private StripedHitDetectionContextBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        //the thread count doubles up to the number of cores or the first argument
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        HitDetectionComponent hitDetection = new HitDetectionComponent();
+        hitDetection.trigger = HitDetection.PERIODIC_PER_ENTITY;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                run(new SingleLockHitDetectionContext(), threads, hitDetection);
+                run(new StripedHitDetectionContext(), threads, hitDetection);
+            }
+            long singleLock = Long.MAX_VALUE;
+            long striped = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                singleLock = Math.min(singleLock, run(new SingleLockHitDetectionContext(), threads, hitDetection));
+                striped = Math.min(striped, run(new StripedHitDetectionContext(), threads, hitDetection));
+            }
+            System.out.println(String.format("%2d threads: single lock %8.1f hits/ms, %d stripes %8.1f hits/ms",
+                    threads, hitsPerMs(threads, singleLock), StripedHitDetectionContext.DEFAULT_STRIPES,
+                    hitsPerMs(threads, striped)));
+        }
+    }
+
+    /**
+     * @return the nanoseconds until all threads added their hits
+     */
+    private static long run(final HitDetectionContext context, int threads, final HitDetectionComponent hitDetection)
+            throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int first = i;
+            final int step = threads;
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    //every thread has its own attackers, the targets are shared
+                    int attacker = first;
+                    int target = 0;
+                    for (int hit = 0; hit < HITS_PER_THREAD; hit++) {
+                        context.addHit(1 + attacker, ATTACKERS + 1 + target, hitDetection);
+                        attacker += step;
+                        if (attacker >= ATTACKERS) {
+                            attacker = first;
+                            target = (target + 1) % TARGETS;
+                        }
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        barrier.await();
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static double hitsPerMs(int threads, long nanos) {
+        return (double) threads * HITS_PER_THREAD / (nanos / 1000000.0);
+    }
+
+    /**
+     * All hits behind one lock, what the StripedHitDetectionContext replaced
+     */
+    private static final class SingleLockHitDetectionContext implements HitDetectionContext {
+
+        private final HitDetectionContextImpl context = new HitDetectionContextImpl();
+
+        @Override
+        public synchronized boolean checkHit(EntityRef entity, EntityRef otherEntity) {
+            return context.checkHit(entity, otherEntity);
+        }
+
+        @Override
+        public synchronized boolean addHit(EntityRef entity, EntityRef otherEntity) {
+            return context.addHit(entity, otherEntity);
+        }
+
+        @Override
+        public synchronized boolean addHit(int entity, int otherEntity, HitDetectionComponent hitDetection) {
+            return context.addHit(entity, otherEntity, hitDetection);
+        }
+
+        @Override
+        public synchronized boolean removeHit(EntityRef entity, EntityRef otherEntity) {
+            return context.removeHit(entity, otherEntity);
+        }
+
+        @Override
+        public synchronized void clear(EntityRef entity) {
+            context.clear(entity);
+        }
+
+        @Override
+        public synchronized void clear(int entity) {
+            context.clear(entity);
+        }
+
+        @Override
+        public synchronized void update(float delta) {
+            context.update(delta);
+        }
+
+        @Override
+        public synchronized int getCount(HitDetection trigger) {
+            return context.getCount(trigger);
+        }
+    }
+}